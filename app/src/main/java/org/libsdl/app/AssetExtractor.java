@@ -1,13 +1,130 @@
 package org.libsdl.app;
 
+import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 import android.util.Log;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.CRC32;
 import java.util.zip.CheckedInputStream;
 
 public class AssetExtractor {
+    private static final String TAG = "AssetExtractor";
+    private static final int BUFFER_SIZE = 16384;
+    static final String PART_SUFFIX = ".part";
+
+    // Each extraction worker keeps one copy buffer for every file it handles
+    private static final ThreadLocal<byte[]> sCopyBuffer = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    // How often a ProgressListener hears about a running extraction
+    private static final long PROGRESS_INTERVAL_NS = 100 * 1000000L;
+
+    /** Receives progress snapshots from the extraction worker threads. */
+    public interface ProgressListener {
+        void onProgress(Progress progress);
+    }
+
+    /** One moment of an extraction run. bytesTotal is -1 when the APK has no checksum index. */
+    public static class Progress {
+        public final int filesDone;
+        public final int filesTotal;
+        public final long bytesDone;
+        public final long bytesTotal;
+        public final long elapsedMillis;
+        public final boolean finished;
+
+        Progress(int filesDone, int filesTotal, long bytesDone, long bytesTotal, long elapsedMillis, boolean finished) {
+            this.filesDone = filesDone;
+            this.filesTotal = filesTotal;
+            this.bytesDone = bytesDone;
+            this.bytesTotal = bytesTotal;
+            this.elapsedMillis = elapsedMillis;
+            this.finished = finished;
+        }
+
+        public long bytesPerSecond() {
+            return (elapsedMillis > 0) ? bytesDone * 1000 / elapsedMillis : 0;
+        }
+
+        // Estimated time left, or -1 if it can't be estimated yet
+        public long etaMillis() {
+            if (finished) return 0;
+            if (filesDone == 0 && bytesDone == 0) return -1;
+            if (bytesTotal > 0 && bytesDone > 0) {
+                return (bytesTotal - bytesDone) * elapsedMillis / bytesDone;
+            }
+            return (filesDone > 0) ? (long) (filesTotal - filesDone) * elapsedMillis / filesDone : -1;
+        }
+    }
+
+    // Counters shared by every worker of one extraction run
+    private static class ProgressTracker implements AssetIO.Listener {
+        private final ProgressListener mListener;
+        private final int mFilesTotal;
+        private final long mBytesTotal;
+        private final long mStartTime = System.nanoTime();
+        private final AtomicInteger mFilesDone = new AtomicInteger();
+        private final AtomicLong mBytesDone = new AtomicLong();
+        private final AtomicLong mNextPublish = new AtomicLong(mStartTime);
+
+        ProgressTracker(ProgressListener listener, int filesTotal, long bytesTotal) {
+            mListener = listener;
+            mFilesTotal = filesTotal;
+            mBytesTotal = bytesTotal;
+        }
+
+        @Override
+        public void onBytes(long count) {
+            mBytesDone.addAndGet(count);
+            maybePublish();
+        }
+
+        void fileDone() {
+            mFilesDone.incrementAndGet();
+            maybePublish();
+        }
+
+        long bytesDone() {
+            return mBytesDone.get();
+        }
+
+        long elapsedMillis() {
+            return Math.max(1, (System.nanoTime() - mStartTime) / 1000000);
+        }
+
+        private void maybePublish() {
+            if (mListener == null) return;
+            long now = System.nanoTime();
+            long next = mNextPublish.get();
+            // Only the worker that wins the race publishes this interval
+            if (now >= next && mNextPublish.compareAndSet(next, now + PROGRESS_INTERVAL_NS)) {
+                publish(false);
+            }
+        }
+
+        void publish(boolean finished) {
+            if (mListener == null) return;
+            mListener.onProgress(new Progress(mFilesDone.get(), mFilesTotal, mBytesDone.get(), mBytesTotal,
+                    elapsedMillis(), finished));
+        }
+    }
 
     public static long getAssetCRC(AssetManager assets, String path) {
         try (InputStream is = assets.open(path);
@@ -21,77 +138,349 @@ public class AssetExtractor {
     }
 
     public static long getFileCRC(File file) {
-        if (!file.exists()) return -2;
-        try (InputStream is = new FileInputStream(file);
-             CheckedInputStream cis = new CheckedInputStream(is, new CRC32())) {
-            byte[] buffer = new byte[16384];
-            while (cis.read(buffer) >= 0) {}
-            return cis.getChecksum().getValue();
+        return AssetState.computeFileCRC(file);
+    }
+
+    // Returns the build-time checksum index, or null if this APK was packaged without one
+    public static AssetIndex loadIndex(AssetManager assets) {
+        try (InputStream in = assets.open(AssetIndex.INDEX_FILE)) {
+            return AssetIndex.read(in);
         } catch (IOException e) {
-            return -3;
+            Log.w(TAG, "No usable " + AssetIndex.INDEX_FILE + " in assets, falling back to hashing APK assets", e);
+            return null;
         }
     }
 
     // Extract all assets in assets/ into baseDir
     public static void extractAll(AssetManager assets, File targetDir) throws IOException {
-        Log.i("AssetExtractor", "Attempting to open manifest.txt...");
-        InputStream manifestStream = null;
+        extractAll(assets, targetDir, null);
+    }
+
+    public static void extractAll(AssetManager assets, File targetDir, ProgressListener listener) throws IOException {
+        List<String> entries = readManifest(assets);
+
+        List<String> files = new ArrayList<>();
+        Set<File> dirs = new HashSet<>();
+        for (String line : entries) {
+            if (line.endsWith("/")) {
+                dirs.add(new File(targetDir, line));
+            } else {
+                addFile(targetDir, line, files, dirs);
+            }
+        }
+        createDirs(dirs);
+        // Without an index there's nothing to resume from, but the journal still marks the run unfinished
+        AssetState state = AssetState.load(targetDir);
+        state.beginJournal();
+        ProgressTracker progress = new ProgressTracker(listener, files.size(), -1);
+        extractFiles(assets, targetDir, files, progress, null, null);
+        progress.publish(true);
+        state.finishJournal();
+    }
+
+    /**
+     * Brings targetDir in line with the APK by only extracting files that were added or changed
+     * since the last sync, and deleting files we extracted before that the APK no longer ships.
+     * Falls back to extractAll when the APK has no checksum index.
+     */
+    public static void sync(AssetManager assets, File targetDir) throws IOException {
+        sync(assets, targetDir, null);
+    }
+
+    public static void sync(AssetManager assets, File targetDir, ProgressListener listener) throws IOException {
+        sync(assets, targetDir, listener, null);
+    }
+
+    /**
+     * Lazy variant of sync: only files under bootDirs are extracted before returning. The rest
+     * is handed back as an AssetMaterializer (not yet started) to fill in from the background,
+     * or null if there is nothing left to do.
+     */
+    public static AssetMaterializer sync(AssetManager assets, File targetDir, ProgressListener listener,
+                                         String[] bootDirs) throws IOException {
+        AssetIndex index = loadIndex(assets);
+        if (index == null) {
+            extractAll(assets, targetDir, listener);
+            return null;
+        }
+        List<String> entries = readManifest(assets);
+        AssetState state = AssetState.load(targetDir);
+
+        List<String> files = new ArrayList<>();
+        Set<File> dirs = new HashSet<>();
+        // Identical files (same size and CRC32) only get pulled out of the APK once
+        Map<String, String> contentPaths = new HashMap<>();
+        List<String> duplicates = new ArrayList<>();
+        for (String line : entries) {
+            if (line.endsWith("/")) {
+                dirs.add(new File(targetDir, line));
+                continue;
+            }
+            AssetIndex.Entry entry = index.get(line);
+            if (entry == null) {
+                // Not a file at build time (most likely a directory), only needed if it's missing
+                if (!new File(targetDir, line).exists()) addFile(targetDir, line, files, dirs);
+                continue;
+            }
+
+            String key = AssetStore.contentKey(entry);
+            if (state.isCurrent(targetDir, entry)) {
+                if (!contentPaths.containsKey(key)) contentPaths.put(key, line);
+            } else if (contentPaths.containsKey(key)) {
+                duplicates.add(line);
+                File parentDir = new File(targetDir, line).getParentFile();
+                if (parentDir != null) dirs.add(parentDir);
+            } else {
+                contentPaths.put(key, line);
+                addFile(targetDir, line, files, dirs);
+            }
+        }
+
+        int removed = 0;
+        for (String path : state.paths()) {
+            if (index.get(path) != null) continue;
+            File stale = new File(targetDir, path);
+            if (stale.exists() && !stale.delete()) {
+                Log.e(TAG, "Failed to delete removed asset: " + stale.getAbsolutePath());
+                continue;
+            }
+            state.remove(path);
+            removed++;
+        }
+
+        List<String> deferred = new ArrayList<>();
+        if (bootDirs != null) {
+            deferred.addAll(removeOutside(files, bootDirs));
+            deferred.addAll(removeOutside(duplicates, bootDirs));
+        }
+
+        long bytesTotal = 0;
+        for (String path : files) bytesTotal += sizeOf(index, path);
+        for (String path : duplicates) bytesTotal += sizeOf(index, path);
+        ProgressTracker progress = new ProgressTracker(listener, files.size() + duplicates.size(), bytesTotal);
+
+        // Every finished file is journaled as it lands, so a killed run resumes with what's left
+        state.beginJournal();
+        createDirs(dirs);
+        extractFiles(assets, targetDir, files, progress, state, index);
+
+        // Duplicates come from the copy already on disk; if that copy didn't make it, use the APK.
+        // The source only counts once its state record says it holds the APK's content: a failed
+        // extraction leaves the old file behind, and a deferred one isn't there yet
+        List<String> missed = new ArrayList<>();
+        for (String path : duplicates) {
+            AssetIndex.Entry entry = index.get(path);
+            AssetIndex.Entry sourceEntry = index.get(contentPaths.get(AssetStore.contentKey(entry)));
+            File source = new File(targetDir, sourceEntry.path);
+            File target = new File(targetDir, path);
+            if (state.isCurrent(targetDir, sourceEntry) && AssetStore.linkOrCopy(source, target)) {
+                state.commit(path, entry.size, target.lastModified(), entry.crc);
+                progress.onBytes(entry.size);
+                progress.fileDone();
+            } else {
+                missed.add(path);
+            }
+        }
+        extractFiles(assets, targetDir, missed, progress, state, index);
+        progress.publish(true);
+
+        Log.i(TAG, "Sync complete. Extracted " + (files.size() + missed.size()) + ", deduplicated "
+                + (duplicates.size() - missed.size()) + ", removed " + removed + ", deferred " + deferred.size()
+                + ", unchanged " + (index.size() - files.size() - duplicates.size() - deferred.size()));
+        if (!deferred.isEmpty()) {
+            // The journal stays open until the materializer is done, so a kill still resumes
+            return new AssetMaterializer(assets, targetDir, state, index, contentPaths, deferred);
+        }
+        state.finishJournal();
+        return null;
+    }
+
+    private static List<String> removeOutside(List<String> paths, String[] dirs) {
+        List<String> outside = new ArrayList<>();
+        for (int i = paths.size() - 1; i >= 0; i--) {
+            if (!AssetState.isInDirs(paths.get(i), dirs)) outside.add(0, paths.remove(i));
+        }
+        return outside;
+    }
+
+    private static long sizeOf(AssetIndex index, String path) {
+        AssetIndex.Entry entry = index.get(path);
+        return (entry != null) ? entry.size : 0;
+    }
+
+    static void commitExtracted(AssetState state, AssetIndex index, File targetDir, String path) {
+        AssetIndex.Entry entry = index.get(path);
+        File outFile = new File(targetDir, path);
+        if (entry == null || outFile.length() != entry.size) return;
         try {
-            manifestStream = assets.open("manifest.txt");
+            state.commit(path, entry.size, outFile.lastModified(), entry.crc);
         } catch (IOException e) {
-            Log.e("AssetExtractor", "CRITICAL: Could not find manifest.txt in assets root!", e);
-            throw e; // Fail hard so you see it
+            // The file itself is fine, a resumed run would just hash it once more
+            Log.w(TAG, "Could not journal " + path, e);
         }
+    }
 
-        BufferedReader reader = new BufferedReader(new InputStreamReader(manifestStream));
-        String line;
-        int count = 0;
-        while ((line = reader.readLine()) != null) {
-            line = line.trim();
-            if (line.isEmpty()) continue;
+    private static void addFile(File targetDir, String line, List<String> files, Set<File> dirs) {
+        files.add(line);
+        File parentDir = new File(targetDir, line).getParentFile();
+        if (parentDir != null) dirs.add(parentDir);
+    }
 
-            File outFile = new File(targetDir, line);
-            count++;
+    // Create every directory up front so the extraction workers never race on mkdirs()
+    private static void createDirs(Set<File> dirs) {
+        for (File dir : dirs) {
+            if (!dir.exists() && !dir.mkdirs()) {
+                Log.e(TAG, "Failed to create directory: " + dir.getAbsolutePath());
+            }
+        }
+        Log.d(TAG, "Created " + dirs.size() + " directories from manifest");
+    }
 
-            // Log every 10th file so we don't spam too hard but see progress
-            if (count % 10 == 0) Log.d("AssetExtractor", "Extracting: " + line);
+    // Fans the files out across a worker pool sized to the CPU count, committing each one to state as it lands
+    private static void extractFiles(AssetManager assets, File targetDir, List<String> files,
+                                     ProgressTracker progress, AssetState state, AssetIndex index) throws IOException {
+        if (files.isEmpty()) return;
+        long startBytes = progress.bytesDone();
+        long startMs = progress.elapsedMillis();
 
-            String[] children = assets.list(line);
-            boolean isDirectory = line.endsWith("/") || (children != null && children.length > 0);
+        int workers = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), files.size()));
+        ExecutorService pool = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
 
-            if (isDirectory) {
-                // It's a directory (even if empty), just create it and move on
-                if (!outFile.exists() && !outFile.mkdirs()) {
-                    Log.e("AssetExtractor", "Failed to create directory: " + outFile.getAbsolutePath());
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, TAG + "-" + mCount.incrementAndGet());
+            }
+        });
+
+        final AtomicInteger count = new AtomicInteger();
+        for (final String line : files) {
+            pool.execute(() -> {
+                if (extractFile(assets, targetDir, line, progress) >= 0 && state != null) {
+                    commitExtracted(state, index, targetDir, line);
                 }
-                Log.d("AssetExtractor", "Created directory from manifest: " + line);
-                continue;
+                progress.fileDone();
+
+                // Log every 10th file so we don't spam too hard but see progress
+                if (count.incrementAndGet() % 10 == 0) Log.d(TAG, "Extracting: " + line);
+            });
+        }
+
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Extraction interrupted");
+        }
+
+        long bytes = progress.bytesDone() - startBytes;
+        long elapsedMs = Math.max(1, progress.elapsedMillis() - startMs);
+        Log.i(TAG, "Extraction complete. Total files: " + files.size() + ", " + bytes + " bytes in "
+                + elapsedMs + " ms (" + (bytes / 1024 * 1000 / elapsedMs) + " KB/s, " + workers + " workers)");
+    }
+
+    private static List<String> readManifest(AssetManager assets) throws IOException {
+        Log.i(TAG, "Attempting to open manifest.txt...");
+        InputStream manifestStream;
+        try {
+            manifestStream = assets.open("manifest.txt");
+        } catch (IOException e) {
+            Log.e(TAG, "CRITICAL: Could not find manifest.txt in assets root!", e);
+            throw e; // Fail hard so you see it
+        }
+
+        List<String> entries = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(manifestStream))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) entries.add(line);
             }
+        }
+        return entries;
+    }
+
+    private static long transferFile(AssetFileDescriptor afd, File outFile, AssetIO.Listener listener) throws IOException {
+        // The stream doesn't own the descriptor, afd is what closes it
+        FileInputStream in = new FileInputStream(afd.getFileDescriptor());
+        try (FileOutputStream out = new FileOutputStream(outFile)) {
+            long written = AssetIO.transfer(in.getChannel(), afd.getStartOffset(), afd.getLength(), out.getChannel(), listener);
+            out.getFD().sync();
+            return written;
+        }
+    }
 
-            File parentDir = outFile.getParentFile();
-            if (parentDir != null && !parentDir.exists() && !parentDir.mkdirs()) {
-                Log.e("AssetExtractor", "Failed to create parent dir: " + parentDir.getAbsolutePath());
+    /**
+     * Copies a single manifest entry, returning the number of bytes written or -1 on failure.
+     * The data goes to a .part file that is synced and then renamed over the target, so a killed
+     * process never leaves a half-written file under the real name (and never writes through a
+     * hard link shared with a deduplicated copy).
+     */
+    static long extractFile(AssetManager assets, File targetDir, String line, AssetIO.Listener listener) {
+        File outFile = new File(targetDir, line);
+        File partFile = new File(targetDir, line + PART_SUFFIX);
+        try {
+            long written;
+            // Stored (noCompress) entries can be handed straight from the APK to the file by the kernel
+            AssetFileDescriptor afd = openFdIfStored(assets, line);
+            if (afd != null) {
+                try {
+                    written = transferFile(afd, partFile, listener);
+                } finally {
+                    afd.close();
+                }
+                Log.d(TAG, "Transferred " + written + " bytes to " + line);
+            } else {
+                InputStream in;
+                try {
+                    in = assets.open(line);
+                } catch (FileNotFoundException e) {
+                    return extractDirectory(assets, line, outFile, e);
+                }
+                try (InputStream src = in;
+                     FileOutputStream out = new FileOutputStream(partFile)) {
+                    written = AssetIO.copy(src, out, sCopyBuffer.get(), listener);
+                    out.getFD().sync();
+                }
+                Log.d(TAG, "Wrote " + written + " bytes to " + line);
             }
 
-            try (InputStream in = assets.open(line);
-                 OutputStream out = new FileOutputStream(outFile)) {
+            if (!partFile.renameTo(outFile)) {
+                throw new IOException("Could not move " + partFile.getName() + " into place");
+            }
+            return written;
+        } catch (IOException e) {
+            partFile.delete();
+            Log.e(TAG, "Failed to extract file: " + line, e);
+            return -1;
+        }
+    }
 
-                if (in == null) throw new IOException("Could not open asset: " + line);
+    // Compressed entries (and directories) can't be opened as file descriptors
+    private static AssetFileDescriptor openFdIfStored(AssetManager assets, String line) throws IOException {
+        try {
+            return assets.openFd(line);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
 
-                byte[] buffer = new byte[16384];
-                int read;
-                long totalRead = 0;
-                while ((read = in.read(buffer)) != -1) {
-                    out.write(buffer, 0, read);
-                    totalRead += read;
+    // Directories without a trailing slash in the manifest can't be opened, only listed
+    private static long extractDirectory(AssetManager assets, String line, File outFile, FileNotFoundException e) {
+        try {
+            String[] children = assets.list(line);
+            if (children != null && children.length > 0) {
+                if (!outFile.exists() && !outFile.mkdirs()) {
+                    Log.e(TAG, "Failed to create directory: " + outFile.getAbsolutePath());
                 }
-                out.flush(); // watch it, hardware
-                Log.d("AssetExtractor", "Wrote " + totalRead + " bytes to " + line);
-            } catch (IOException e) {
-                Log.e("AssetExtractor", "Failed to extract file: " + line, e);
+                Log.d(TAG, "Created directory from manifest: " + line);
+                return 0;
             }
+        } catch (IOException ignored) {
         }
-        Log.i("AssetExtractor", "Extraction complete. Total files: " + count);
-        reader.close();
+        Log.e(TAG, "Failed to extract file: " + line, e);
+        return -1;
     }
 }
@@ -0,0 +1,54 @@
+package org.libsdl.app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * The copy loops behind asset extraction. Kept free of Android classes so the benchmarks
+ * module can run them on a plain JVM.
+ */
+public class AssetIO {
+
+    // Largest single transferTo() call, so progress keeps moving through big files
+    private static final long TRANSFER_CHUNK = 1 << 20;
+
+    /** Told how many more bytes a copy has written, as it goes. */
+    public interface Listener {
+        void onBytes(long count);
+    }
+
+    // Buffered copy for entries that have to be inflated out of the APK
+    public static long copy(InputStream in, OutputStream out, byte[] buffer) throws IOException {
+        return copy(in, out, buffer, null);
+    }
+
+    public static long copy(InputStream in, OutputStream out, byte[] buffer, Listener listener) throws IOException {
+        int read;
+        long total = 0;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            total += read;
+            if (listener != null) listener.onBytes(read);
+        }
+        out.flush(); // watch it, hardware
+        return total;
+    }
+
+    // Kernel-side copy of length bytes starting at start in src, appended to dst
+    public static long transfer(FileChannel src, long start, long length, FileChannel dst) throws IOException {
+        return transfer(src, start, length, dst, null);
+    }
+
+    public static long transfer(FileChannel src, long start, long length, FileChannel dst, Listener listener) throws IOException {
+        long done = 0;
+        while (done < length) {
+            long n = src.transferTo(start + done, Math.min(length - done, TRANSFER_CHUNK), dst);
+            if (n <= 0) throw new IOException("Short transfer after " + done + " of " + length + " bytes");
+            done += n;
+            if (listener != null) listener.onBytes(n);
+        }
+        return done;
+    }
+}
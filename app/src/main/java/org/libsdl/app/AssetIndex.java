@@ -0,0 +1,66 @@
+package org.libsdl.app;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size and CRC32 of every file in manifest.txt, precomputed at build time by the
+ * generateAssetIndex Gradle task so the APK copies never have to be hashed on device.
+ *
+ * Each line of manifest.idx is "path\tsize\tcrc32 (hex)", in manifest order.
+ */
+public class AssetIndex {
+    public static final String INDEX_FILE = "manifest.idx";
+
+    public static class Entry {
+        public final String path;
+        public final long size;
+        public final long crc;
+
+        public Entry(String path, long size, long crc) {
+            this.path = path;
+            this.size = size;
+            this.crc = crc;
+        }
+    }
+
+    private final Map<String, Entry> mEntries = new LinkedHashMap<>();
+
+    public static AssetIndex read(InputStream in) throws IOException {
+        AssetIndex index = new AssetIndex();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) continue;
+            String[] fields = line.split("\t");
+            if (fields.length != 3) throw new IOException("Malformed asset index line: " + line);
+            try {
+                index.put(new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2], 16)));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed asset index line: " + line, e);
+            }
+        }
+        return index;
+    }
+
+    public void put(Entry entry) {
+        mEntries.put(entry.path, entry);
+    }
+
+    public Entry get(String path) {
+        return mEntries.get(path);
+    }
+
+    public Collection<Entry> entries() {
+        return mEntries.values();
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+}
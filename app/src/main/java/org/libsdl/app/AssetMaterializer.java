@@ -0,0 +1,178 @@
+package org.libsdl.app;
+
+import android.content.res.AssetManager;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Extracts whatever a lazy sync left out, on a low-priority background thread and in the order
+ * the engine is likely to need it. Anything that's needed sooner can be pulled to the front of
+ * the queue with materialize(), which blocks until that file is on disk.
+ */
+public class AssetMaterializer {
+    private static final String TAG = "AssetMaterializer";
+
+    private static AssetMaterializer sInstance;
+
+    private final AssetManager mAssets;
+    private final File mTargetDir;
+    private final AssetState mState;
+    private final AssetIndex mIndex;
+    private final Map<String, String> mContentPaths;
+
+    private final Object mLock = new Object();
+    private final Deque<String> mQueue;
+    private final Set<String> mPending;
+    private String mCurrent;
+    private int mWaiters;
+
+    AssetMaterializer(AssetManager assets, File targetDir, AssetState state, AssetIndex index,
+                      Map<String, String> contentPaths, List<String> paths) {
+        mAssets = assets;
+        mTargetDir = targetDir;
+        mState = state;
+        mIndex = index;
+        mContentPaths = contentPaths;
+
+        List<String> ordered = new ArrayList<>(paths);
+        Collections.sort(ordered, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return likelyUseRank(a) - likelyUseRank(b);
+            }
+        });
+        mQueue = new ArrayDeque<>(ordered);
+        mPending = new HashSet<>(ordered);
+    }
+
+    public static synchronized AssetMaterializer get() {
+        return sInstance;
+    }
+
+    /**
+     * Lower goes first. The select screen reads every character's definition files and
+     * portraits before anything else, stages are only loaded once a match starts, and
+     * movies and music come last.
+     */
+    static int likelyUseRank(String path) {
+        String lower = path.toLowerCase();
+        int rank;
+        if (lower.endsWith(".sff")) {
+            rank = 1;
+        } else if (lower.endsWith(".snd")) {
+            rank = 2;
+        } else if (lower.endsWith(".def") || lower.endsWith(".cns") || lower.endsWith(".cmd") || lower.endsWith(".air")
+                || lower.endsWith(".st") || lower.endsWith(".zss") || lower.endsWith(".const")) {
+            rank = 0;
+        } else {
+            rank = 3;
+        }
+        if (lower.startsWith("video/") || lower.startsWith("sound/")) return 100;
+        return rank * 2 + (lower.startsWith("stages/") ? 1 : 0);
+    }
+
+    public void start() {
+        synchronized (AssetMaterializer.class) {
+            sInstance = this;
+        }
+        Thread thread = new Thread(this::run, TAG);
+        thread.start();
+        Log.i(TAG, "Materializing " + mPending.size() + " deferred assets in the background");
+    }
+
+    // Returns once path is on disk (or wasn't ours to extract), false if interrupted while waiting
+    public boolean materialize(String path) {
+        synchronized (mLock) {
+            if (!mPending.contains(path)) return true;
+            if (!path.equals(mCurrent)) {
+                mQueue.remove(path);
+                mQueue.addFirst(path);
+            }
+            mWaiters++;
+            try {
+                while (mPending.contains(path)) {
+                    mLock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                mWaiters--;
+            }
+            return true;
+        }
+    }
+
+    public boolean isPending(String path) {
+        synchronized (mLock) {
+            return mPending.contains(path);
+        }
+    }
+
+    private void run() {
+        while (true) {
+            String path;
+            boolean urgent;
+            synchronized (mLock) {
+                path = mQueue.pollFirst();
+                if (path == null) break;
+                mCurrent = path;
+                urgent = mWaiters > 0;
+            }
+
+            // Someone is blocked on us, so stop yielding to the rest of the app
+            Process.setThreadPriority(urgent ? Process.THREAD_PRIORITY_DEFAULT : Process.THREAD_PRIORITY_BACKGROUND);
+            materializeNow(path);
+
+            synchronized (mLock) {
+                mPending.remove(path);
+                mCurrent = null;
+                mLock.notifyAll();
+            }
+        }
+
+        try {
+            mState.finishJournal();
+            Log.i(TAG, "All deferred assets materialized");
+        } catch (IOException e) {
+            Log.e(TAG, "Could not finish the asset journal", e);
+        }
+    }
+
+    private void materializeNow(String path) {
+        AssetIndex.Entry entry = mIndex.get(path);
+        if (entry != null) {
+            // Identical content that's already on disk is cheaper to copy than to inflate, as long
+            // as the state record vouches for it; a failed extraction leaves the old file behind
+            String source = mContentPaths.get(AssetStore.contentKey(entry));
+            AssetIndex.Entry sourceEntry = source != null ? mIndex.get(source) : null;
+            if (sourceEntry != null && !source.equals(path) && !isPending(source)) {
+                File sourceFile = new File(mTargetDir, source);
+                File target = new File(mTargetDir, path);
+                if (mState.isCurrent(mTargetDir, sourceEntry) && AssetStore.linkOrCopy(sourceFile, target)) {
+                    try {
+                        mState.commit(path, entry.size, target.lastModified(), entry.crc);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Could not journal " + path, e);
+                    }
+                    return;
+                }
+            }
+        }
+        if (AssetExtractor.extractFile(mAssets, mTargetDir, path, null) >= 0) {
+            AssetExtractor.commitExtracted(mState, mIndex, mTargetDir, path);
+        }
+    }
+}
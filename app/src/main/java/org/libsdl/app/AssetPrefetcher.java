@@ -0,0 +1,86 @@
+package org.libsdl.app;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Warms the page cache for files the engine says it's about to load (the characters and stage
+ * highlighted on the select screen), so match start is bound by decoding rather than by eMMC.
+ * Runs on one background-priority thread; each new request replaces whatever was still queued.
+ */
+public class AssetPrefetcher {
+    private static final String TAG = "AssetPrefetcher";
+
+    private final AssetStore mStore;
+    private final String mBasePath;
+    private final Object mLock = new Object();
+    private String[] mQueued;
+    private int mGeneration;
+    private Thread mThread;
+
+    public AssetPrefetcher(AssetStore store, File baseDir) {
+        mStore = store;
+        mBasePath = baseDir.getAbsolutePath() + "/";
+    }
+
+    public void prefetch(String[] paths) {
+        synchronized (mLock) {
+            mQueued = paths;
+            mGeneration++;
+            if (mThread == null) {
+                mThread = new Thread(this::run, TAG);
+                mThread.start();
+            } else {
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    private void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        while (true) {
+            String[] paths;
+            int generation;
+            synchronized (mLock) {
+                while (mQueued == null) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                paths = mQueued;
+                generation = mGeneration;
+                mQueued = null;
+            }
+
+            for (String path : paths) {
+                synchronized (mLock) {
+                    // The player moved on, only the newest selection is worth warming
+                    if (generation != mGeneration) break;
+                }
+                warm(relativize(path));
+            }
+        }
+    }
+
+    // The engine may hand us paths under mBasePath or relative to it
+    private String relativize(String path) {
+        return path.startsWith(mBasePath) ? path.substring(mBasePath.length()) : path;
+    }
+
+    private void warm(String path) {
+        // Lazily extracted content has to exist before it can be cached
+        AssetMaterializer materializer = AssetMaterializer.get();
+        if (materializer != null && !materializer.materialize(path)) return;
+
+        try {
+            mStore.warm(path);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not prefetch " + path + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package org.libsdl.app;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * What we last knew about the extracted copy of each asset: its size, mtime and CRC32.
+ * Persisted next to the content so a file whose size and mtime haven't moved since it was
+ * last hashed can be trusted without reading it again.
+ *
+ * While an extraction runs, every finished file is also appended to a journal. The journal
+ * only goes away once the state file has been rewritten, so finding one on startup means the
+ * last run was killed; loading replays it, and the next run only redoes what's missing.
+ */
+public class AssetState {
+    public static final String STATE_FILE = ".asset_state";
+    public static final String JOURNAL_FILE = ".asset_journal";
+
+    static class Record {
+        long size;
+        long mtime;
+        long crc;
+    }
+
+    private final File mFile;
+    private final File mJournalFile;
+    private final Map<String, Record> mRecords = new HashMap<>();
+    private boolean mDirty;
+    private Writer mJournal;
+
+    private AssetState(File baseDir) {
+        mFile = new File(baseDir, STATE_FILE);
+        mJournalFile = new File(baseDir, JOURNAL_FILE);
+    }
+
+    public static boolean hasUnfinishedRun(File baseDir) {
+        return new File(baseDir, JOURNAL_FILE).exists();
+    }
+
+    // A missing or unreadable state file just means everything gets hashed once
+    public static AssetState load(File baseDir) {
+        AssetState state = new AssetState(baseDir);
+        if (!state.readRecords(state.mFile)) state.mRecords.clear();
+        // A torn last line from a killed run is simply skipped
+        if (state.mJournalFile.exists()) {
+            state.readRecords(state.mJournalFile);
+            state.mDirty = true;
+        }
+        return state;
+    }
+
+    private boolean readRecords(File file) {
+        if (!file.exists()) return true;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 4) continue;
+                try {
+                    Record r = new Record();
+                    r.size = Long.parseLong(fields[1]);
+                    r.mtime = Long.parseLong(fields[2]);
+                    r.crc = Long.parseLong(fields[3], 16);
+                    mRecords.put(fields[0], r);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String formatRecord(String path, Record r) {
+        return path + "\t" + r.size + "\t" + r.mtime + "\t" + Long.toHexString(r.crc) + "\n";
+    }
+
+    public synchronized void save() throws IOException {
+        if (!mDirty) return;
+        File tmp = new File(mFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            Writer w = new OutputStreamWriter(out, "UTF-8");
+            for (Map.Entry<String, Record> e : mRecords.entrySet()) {
+                w.write(formatRecord(e.getKey(), e.getValue()));
+            }
+            w.flush();
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(mFile)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + mFile.getAbsolutePath());
+        }
+        mDirty = false;
+    }
+
+    // Opens the journal for appending; from here until finishJournal() the run counts as unfinished
+    public synchronized void beginJournal() throws IOException {
+        if (mJournal != null) return;
+        FileOutputStream out = new FileOutputStream(mJournalFile, true);
+        mJournal = new OutputStreamWriter(out, "UTF-8");
+        out.getFD().sync();
+    }
+
+    // Folds the journal into the state file and removes it, marking the run as complete
+    public synchronized void finishJournal() throws IOException {
+        if (mJournal != null) {
+            mJournal.close();
+            mJournal = null;
+        }
+        mDirty = true;
+        save();
+        if (mJournalFile.exists() && !mJournalFile.delete()) {
+            throw new IOException("Could not remove " + mJournalFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Returns true if the local copy of entry under baseDir matches the APK. Only hashes the
+     * local file when the size and mtime recorded last time no longer match it.
+     */
+    public boolean isCurrent(File baseDir, AssetIndex.Entry entry) {
+        File localFile = new File(baseDir, entry.path);
+        long size = localFile.length();
+        if (size != entry.size || !localFile.isFile()) return false;
+
+        long mtime = localFile.lastModified();
+        synchronized (this) {
+            Record r = mRecords.get(entry.path);
+            if (r != null && r.size == size && r.mtime == mtime) return r.crc == entry.crc;
+        }
+        // Hashed outside the lock so other threads recording files don't wait on it
+        long crc = computeFileCRC(localFile);
+        if (crc < 0) return false;
+        record(entry.path, size, mtime, crc);
+        return crc == entry.crc;
+    }
+
+    /**
+     * Returns the first file under dirs whose local copy doesn't match the index, or null if
+     * they all do. This is the whole startup update decision: one stat per file, plus a hash
+     * only for files that changed behind our back.
+     */
+    public String findOutdated(File baseDir, AssetIndex index, String[] dirs) {
+        for (AssetIndex.Entry entry : index.entries()) {
+            if (isInDirs(entry.path, dirs) && !isCurrent(baseDir, entry)) return entry.path;
+        }
+        return null;
+    }
+
+    static boolean isInDirs(String path, String[] dirs) {
+        for (String dir : dirs) {
+            if (path.startsWith(dir + "/")) return true;
+        }
+        return false;
+    }
+
+    // Records a freshly extracted file and appends it to the journal, so it survives the process dying
+    public synchronized void commit(String path, long size, long mtime, long crc) throws IOException {
+        record(path, size, mtime, crc);
+        if (mJournal != null) {
+            mJournal.write(formatRecord(path, mRecords.get(path)));
+            mJournal.flush();
+        }
+    }
+
+    public synchronized void record(String path, long size, long mtime, long crc) {
+        Record r = mRecords.get(path);
+        if (r == null) {
+            r = new Record();
+            mRecords.put(path, r);
+        }
+        r.size = size;
+        r.mtime = mtime;
+        r.crc = crc;
+        mDirty = true;
+    }
+
+    public synchronized void remove(String path) {
+        if (mRecords.remove(path) != null) mDirty = true;
+    }
+
+    public synchronized List<String> paths() {
+        return new ArrayList<>(mRecords.keySet());
+    }
+
+    public static long computeFileCRC(File file) {
+        if (!file.exists()) return -2;
+        try (InputStream is = new FileInputStream(file);
+             CheckedInputStream cis = new CheckedInputStream(is, new CRC32())) {
+            byte[] buffer = new byte[16384];
+            while (cis.read(buffer) >= 0) {}
+            return cis.getChecksum().getValue();
+        } catch (IOException e) {
+            return -3;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package org.libsdl.app;
+
+import android.content.res.AssetManager;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content-addressed view of the extracted assets. Two files with the same size and CRC32 are
+ * treated as the same content: they share one on-disk copy when they live in app-private
+ * storage and the filesystem allows hard links, and they share one read-only memory mapping
+ * as long as both are still what the APK shipped.
+ */
+public class AssetStore {
+    private static final String TAG = "AssetStore";
+
+    private static AssetStore sInstance;
+    // Only files under this directory may be hard linked, see linkOrCopy
+    private static volatile File sHardLinkRoot;
+
+    static class Mapping {
+        final String key;
+        final File file;
+        final MappedByteBuffer buffer;
+        int refs;
+
+        Mapping(String key, File file, MappedByteBuffer buffer) {
+            this.key = key;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private final File mBaseDir;
+    private final AssetIndex mIndex;
+    private final AssetState mState;
+    private final Map<String, Mapping> mMappings = new HashMap<>();
+    // Key each mapped path was looked up under, so release finds it even if the file changed since
+    private final Map<String, String> mPathKeys = new HashMap<>();
+
+    private AssetStore(File baseDir, AssetIndex index) {
+        mBaseDir = baseDir;
+        mIndex = index;
+        mState = AssetState.load(baseDir);
+    }
+
+    public static synchronized AssetStore open(AssetManager assets, File baseDir) {
+        if (sInstance == null || !sInstance.mBaseDir.equals(baseDir)) {
+            sInstance = new AssetStore(baseDir, AssetExtractor.loadIndex(assets));
+        }
+        return sInstance;
+    }
+
+    public static synchronized AssetStore get() {
+        return sInstance;
+    }
+
+    public static String contentKey(AssetIndex.Entry entry) {
+        return Long.toHexString(entry.crc) + "-" + entry.size;
+    }
+
+    // Files the index doesn't know about, or that were changed since extraction (the game
+    // folder can be modded file by file), are only shared with themselves
+    private String keyFor(String path) {
+        AssetIndex.Entry entry = (mIndex != null) ? mIndex.get(path) : null;
+        if (entry != null && mState.isCurrent(mBaseDir, entry)) return contentKey(entry);
+        return "path:" + path;
+    }
+
+    /**
+     * Maps an extracted asset read-only. Every path with the same content gets a view of the
+     * same mapping; each call must be paired with release(path).
+     */
+    public synchronized ByteBuffer map(String path) throws IOException {
+        return acquire(path).buffer.asReadOnlyBuffer();
+    }
+
+    private Mapping acquire(String path) throws IOException {
+        String key = keyFor(path);
+        Mapping mapping = mMappings.get(key);
+        if (mapping == null) {
+            File file = new File(mBaseDir, path);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                FileChannel channel = raf.getChannel();
+                mapping = new Mapping(key, file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+            mMappings.put(key, mapping);
+        }
+        mapping.refs++;
+        mPathKeys.put(path, key);
+        return mapping;
+    }
+
+    /**
+     * Pulls every page of path into the page cache (madvise(WILLNEED) plus a touch per page)
+     * without keeping the mapping around afterwards.
+     */
+    public void warm(String path) throws IOException {
+        MappedByteBuffer buffer;
+        synchronized (this) {
+            buffer = acquire(path).buffer;
+        }
+        try {
+            buffer.load();
+        } finally {
+            release(path);
+        }
+    }
+
+    public synchronized void release(String path) {
+        String key = mPathKeys.get(path);
+        if (key == null) return;
+        Mapping mapping = mMappings.get(key);
+        if (mapping == null) return;
+        if (--mapping.refs <= 0) {
+            // The pages go away once the last view is collected
+            mMappings.remove(key);
+        }
+    }
+
+    // One line per live mapping, for debugging page-cache pressure
+    public synchronized List<String> liveMappings() {
+        List<String> live = new ArrayList<>();
+        for (Mapping m : mMappings.values()) {
+            live.add(m.key + " refs=" + m.refs + " bytes=" + m.buffer.capacity() + " " + m.file.getPath());
+        }
+        return live;
+    }
+
+    /**
+     * Allows linkOrCopy to hard link files under dir, which should be app-private storage
+     * nobody edits by hand. Everywhere else gets copies.
+     */
+    public static void setHardLinkRoot(File dir) {
+        sHardLinkRoot = dir;
+    }
+
+    /**
+     * Makes target hold the same content as source, by hard link inside the hard link root
+     * where the filesystem supports it, and by a local file copy otherwise.
+     *
+     * Linked files share their content, so editing one in place changes all of them. That is
+     * why the game folder, which players may pick themselves and mod, never gets links.
+     */
+    static boolean linkOrCopy(File source, File target) {
+        if (target.exists() && !target.delete()) return false;
+        if (isUnder(target, sHardLinkRoot)) {
+            try {
+                Os.link(source.getAbsolutePath(), target.getAbsolutePath());
+                return true;
+            } catch (ErrnoException e) {
+                // Fall back to copying, which still saves decompressing the entry out of the APK
+            }
+        }
+
+        // Same .part + rename dance as AssetExtractor, so a killed copy never looks finished
+        File part = new File(target.getPath() + AssetExtractor.PART_SUFFIX);
+        try (FileInputStream in = new FileInputStream(source);
+             FileOutputStream out = new FileOutputStream(part)) {
+            FileChannel src = in.getChannel();
+            AssetIO.transfer(src, 0, src.size(), out.getChannel());
+            out.getFD().sync();
+        } catch (IOException e) {
+            part.delete();
+            Log.e(TAG, "Failed to copy " + source + " to " + target, e);
+            return false;
+        }
+        if (!part.renameTo(target)) {
+            part.delete();
+            Log.e(TAG, "Failed to move " + part + " into place");
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean isUnder(File file, File root) {
+        if (root == null) return false;
+        try {
+            String rootPath = root.getCanonicalPath() + File.separator;
+            return file.getCanonicalPath().startsWith(rootPath);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package org.libsdl.app;
+
+/**
+ * Cleans up one device's normalized (-1...1) axis values before they go to SDL: deadzone,
+ * response curve, a one-euro jitter filter and finally quantization with hysteresis, so a
+ * stick resting under a noisy finger or a cheap pad's ADC produces the same output every
+ * event and the caller's change check can drop it. Pure and allocation free; values are
+ * filtered in place, one call per event. Every stage is off ({@link Settings#NONE}) unless the
+ * engine turns it on with SDLControllerManager.setAxisFilter.
+ *
+ * The jitter filter only moves when an event comes in, so a stick held still would stay just
+ * short of where it is. Fully deflected values skip it, and once input has stopped for
+ * {@link #SETTLE_MILLIS} the caller should {@link #settle} the axes onto their real values.
+ *
+ * Deadzone and curve only apply to axes paired into sticks, either radially (to the stick's
+ * length) or to each axis on its own. Other axes such as triggers rest at -1 and would get a
+ * dead band at half travel, so they are only smoothed and quantized.
+ */
+class AxisFilter {
+
+    /** How a device's axes are filtered. Immutable so it can be handed between threads. */
+    static final class Settings {
+        static final Settings NONE = new Settings(0f, false, 1f, 0f, 0f, 0f);
+
+        // Deadzone as a fraction of full travel; radial applies it to paired axes as a circle
+        final float deadzone;
+        final boolean radial;
+        // Exponent of the response curve, 1 for linear; above 1 gives finer control near center
+        final float curve;
+        // Output resolution; 0 turns quantization off
+        final float step;
+        // One-euro filter: cutoff in Hz while still, and how fast it opens up with speed. A
+        // cutoff of 0 turns the filter off
+        final float minCutoff, beta;
+
+        Settings(float deadzone, boolean radial, float curve, float step, float minCutoff, float beta) {
+            this.deadzone = Math.max(0f, Math.min(0.95f, deadzone));
+            this.radial = radial;
+            this.curve = curve > 0 ? curve : 1f;
+            this.step = Math.max(0f, step);
+            this.minCutoff = Math.max(0f, minCutoff);
+            this.beta = Math.max(0f, beta);
+        }
+    }
+
+    // How long after the last event the output should be settled onto the input
+    static final int SETTLE_MILLIS = 50;
+
+    // Cutoff for the one-euro filter's speed estimate
+    private static final float DERIVATIVE_CUTOFF = 1f;
+    // Output only moves once the input is this many steps away from it
+    private static final float HYSTERESIS = 0.75f;
+
+    private Settings mSettings = Settings.NONE;
+    private final int[] mPartner; // Other axis of the same stick, or -1
+    private final float[] mSmoothed, mSpeed, mOutput;
+    // Shaped input before smoothing, and the value last handed back, per axis
+    private final float[] mTarget, mLast;
+    private final long[] mLastTime; // Millis of the last filtered value, or -1 after a reset
+
+    AxisFilter(int axisCount) {
+        mPartner = new int[axisCount];
+        mSmoothed = new float[axisCount];
+        mSpeed = new float[axisCount];
+        mOutput = new float[axisCount];
+        mTarget = new float[axisCount];
+        mLast = new float[axisCount];
+        mLastTime = new long[axisCount];
+        java.util.Arrays.fill(mPartner, -1);
+        reset();
+    }
+
+    // Treats x and y as one stick for the radial deadzone and curve
+    void pair(int x, int y) {
+        mPartner[x] = y;
+        mPartner[y] = x;
+    }
+
+    void setSettings(Settings settings) {
+        mSettings = settings != null ? settings : Settings.NONE;
+    }
+
+    Settings getSettings() {
+        return mSettings;
+    }
+
+    void reset() {
+        java.util.Arrays.fill(mSmoothed, 0);
+        java.util.Arrays.fill(mSpeed, 0);
+        java.util.Arrays.fill(mOutput, 0);
+        java.util.Arrays.fill(mTarget, 0);
+        java.util.Arrays.fill(mLast, 0);
+        java.util.Arrays.fill(mLastTime, -1);
+    }
+
+    /** Whether every axis last came out where its input is, so there is nothing to settle. */
+    boolean isSettled() {
+        Settings s = mSettings;
+        for (int i = 0; i < mLast.length; i++) {
+            if (mLast[i] != settled(s, mTarget[i])) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Moves every axis straight to its last input, quantized, as if the jitter filter had
+     * caught up, and writes all of them to values.
+     */
+    void settle(float[] values) {
+        Settings s = mSettings;
+        for (int i = 0; i < mLast.length; i++) {
+            float value = settled(s, mTarget[i]);
+            mSmoothed[i] = mTarget[i];
+            mSpeed[i] = 0;
+            mOutput[i] = value;
+            mLast[i] = value;
+            values[i] = value;
+        }
+    }
+
+    private static float settled(Settings s, float target) {
+        if (s.step <= 0) return target;
+        return Math.max(-1f, Math.min(1f, Math.round(target / s.step) * s.step));
+    }
+
+    /** Filters values (one per axis, -1...1) in place; time is the event's timestamp in millis. */
+    void filter(float[] values, long time) {
+        Settings s = mSettings;
+        for (int i = 0; i < mPartner.length; i++) {
+            int partner = mPartner[i];
+            if (partner < 0) continue;
+            if (!s.radial) {
+                values[i] = shapeAxis(s, values[i]);
+            } else if (partner > i) {
+                shapeStick(s, values, i, partner);
+            }
+        }
+        for (int i = 0; i < mPartner.length; i++) {
+            float value = values[i];
+            mTarget[i] = value;
+            if (value == 0) {
+                // Let go: rest immediately, and start from scratch next time
+                mSmoothed[i] = 0;
+                mSpeed[i] = 0;
+                mOutput[i] = 0;
+                mLast[i] = 0;
+                mLastTime[i] = -1;
+                continue;
+            }
+            if (Math.abs(value) >= 1f) {
+                // Full deflection goes straight through, smoothing carries on from there
+                mSmoothed[i] = value;
+                mSpeed[i] = 0;
+                mLastTime[i] = time;
+            } else if (s.minCutoff > 0) {
+                value = smooth(s, i, value, time);
+            }
+            value = quantize(s, i, value);
+            mLast[i] = value;
+            values[i] = value;
+        }
+    }
+
+    private static float shapeAxis(Settings s, float value) {
+        float magnitude = Math.min(1f, Math.abs(value));
+        if (magnitude <= s.deadzone) return 0;
+        magnitude = (magnitude - s.deadzone) / (1f - s.deadzone);
+        if (s.curve != 1f) magnitude = (float) Math.pow(magnitude, s.curve);
+        return value < 0 ? -magnitude : magnitude;
+    }
+
+    private static void shapeStick(Settings s, float[] values, int x, int y) {
+        float length = (float) Math.sqrt(values[x] * values[x] + values[y] * values[y]);
+        if (length <= s.deadzone) {
+            values[x] = 0;
+            values[y] = 0;
+            return;
+        }
+        float shaped = Math.min(1f, (length - s.deadzone) / (1f - s.deadzone));
+        if (s.curve != 1f) shaped = (float) Math.pow(shaped, s.curve);
+        float scale = shaped / length;
+        values[x] *= scale;
+        values[y] *= scale;
+    }
+
+    // One-euro filter: a low-pass whose cutoff rises with speed, so resting jitter is smoothed
+    // away while fast motion passes with little lag
+    private float smooth(Settings s, int axis, float value, long time) {
+        long last = mLastTime[axis];
+        mLastTime[axis] = time;
+        if (last < 0) {
+            mSmoothed[axis] = value;
+            mSpeed[axis] = 0;
+            return value;
+        }
+        float dt = Math.max(1, time - last) / 1000f;
+        float speed = (value - mSmoothed[axis]) / dt;
+        mSpeed[axis] += alpha(DERIVATIVE_CUTOFF, dt) * (speed - mSpeed[axis]);
+        float cutoff = s.minCutoff + s.beta * Math.abs(mSpeed[axis]);
+        mSmoothed[axis] += alpha(cutoff, dt) * (value - mSmoothed[axis]);
+        return mSmoothed[axis];
+    }
+
+    private static float alpha(float cutoff, float dt) {
+        float tau = 1f / (2f * (float) Math.PI * cutoff);
+        return 1f / (1f + tau / dt);
+    }
+
+    private float quantize(Settings s, int axis, float value) {
+        if (s.step <= 0) return value;
+        float output = mOutput[axis];
+        if (Math.abs(value - output) >= s.step * HYSTERESIS || Math.abs(value) >= 1f) {
+            output = Math.max(-1f, Math.min(1f, Math.round(value / s.step) * s.step));
+            mOutput[axis] = output;
+        }
+        return output;
+    }
+}
@@ -0,0 +1,188 @@
+package org.libsdl.app;
+
+import android.util.Log;
+import android.view.InputDevice;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * What we found out about each controller model, so reconnects and later launches don't probe
+ * it again with hasKeys and motion range scans. Keyed by vendor id, product id and descriptor;
+ * entries are only trusted on the OS build that probed them, since an update can change what
+ * the input stack reports.
+ *
+ * Stored as: magic, version, SDK level, build fingerprint, entry count, then per entry its key,
+ * flags, button mask, axis mask and hat count.
+ */
+class ControllerCapabilityCache {
+    private static final String TAG = "ControllerCaps";
+
+    static final int MAGIC = 0x494B4343; // "IKCC"
+    static final int VERSION = 1;
+
+    static final class Entry {
+        // What has been probed so far; the masks and gamepad verdict are learnt separately
+        static final int HAS_MASKS = 1;
+        static final int HAS_GAMEPAD = 2;
+        static final int IS_GAMEPAD = 4;
+
+        int flags;
+        int buttonMask, axisMask, hatCount;
+
+        boolean has(int flag) {
+            return (flags & flag) != 0;
+        }
+    }
+
+    private final File mFile;
+    private final int mSdkInt;
+    private final String mFingerprint;
+    private final Map<String, Entry> mEntries = new HashMap<>(); // Guarded by this
+    // Saves run one at a time in the background; a burst of changes shares one save
+    private final ExecutorService mSaver = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, TAG);
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean mSavePending = new AtomicBoolean();
+
+    private ControllerCapabilityCache(File file, int sdkInt, String fingerprint) {
+        mFile = file;
+        mSdkInt = sdkInt;
+        mFingerprint = fingerprint != null ? fingerprint : "";
+    }
+
+    /** Loads the cache in file, starting empty if it's missing, unreadable or from another OS build. */
+    static ControllerCapabilityCache open(File file, int sdkInt, String fingerprint) {
+        ControllerCapabilityCache cache = new ControllerCapabilityCache(file, sdkInt, fingerprint);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            cache.read(in);
+        } catch (FileNotFoundException e) {
+            // First launch
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable controller cache", e);
+            cache.mEntries.clear();
+        }
+        return cache;
+    }
+
+    static String key(InputDevice device) {
+        return device.getVendorId() + ":" + device.getProductId() + ":" + SDLControllerManager.getJoystickDescriptor(device);
+    }
+
+    /** Returns the entry for key, or null if nothing is known about it yet. */
+    synchronized Entry get(String key) {
+        Entry e = mEntries.get(key);
+        if (e == null) return null;
+        // Copy so callers never see a half-updated entry
+        Entry copy = new Entry();
+        copy.flags = e.flags;
+        copy.buttonMask = e.buttonMask;
+        copy.axisMask = e.axisMask;
+        copy.hatCount = e.hatCount;
+        return copy;
+    }
+
+    void putMasks(String key, int buttonMask, int axisMask, int hatCount) {
+        synchronized (this) {
+            Entry e = entry(key);
+            e.flags |= Entry.HAS_MASKS;
+            e.buttonMask = buttonMask;
+            e.axisMask = axisMask;
+            e.hatCount = hatCount;
+        }
+        saveLater();
+    }
+
+    void putGamepad(String key, boolean isGamepad) {
+        synchronized (this) {
+            Entry e = entry(key);
+            e.flags = (e.flags & ~Entry.IS_GAMEPAD) | Entry.HAS_GAMEPAD | (isGamepad ? Entry.IS_GAMEPAD : 0);
+        }
+        saveLater();
+    }
+
+    private Entry entry(String key) {
+        Entry e = mEntries.get(key);
+        if (e == null) {
+            e = new Entry();
+            mEntries.put(key, e);
+        }
+        return e;
+    }
+
+    private void read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not a controller cache");
+        int version = in.readUnsignedShort();
+        if (version != VERSION) throw new IOException("Unsupported controller cache version " + version);
+        if (in.readInt() != mSdkInt || !in.readUTF().equals(mFingerprint)) {
+            Log.v(TAG, "OS changed, probing controllers again");
+            return;
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String key = in.readUTF();
+            Entry e = new Entry();
+            e.flags = in.readUnsignedByte();
+            e.buttonMask = in.readInt();
+            e.axisMask = in.readInt();
+            e.hatCount = in.readUnsignedByte();
+            mEntries.put(key, e);
+        }
+    }
+
+    // New entries are rare (a controller model seen for the first time), so just write it all.
+    // Nothing is queued while a save is still waiting to run, since that one writes the latest entries
+    private void saveLater() {
+        if (mSavePending.compareAndSet(false, true)) mSaver.execute(this::save);
+    }
+
+    private void save() {
+        // Cleared first so a change made while writing gets a save of its own
+        mSavePending.set(false);
+        File tmp = new File(mFile.getPath() + ".tmp");
+        try {
+            File dir = mFile.getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) throw new IOException("Could not create " + dir);
+            try (FileOutputStream fos = new FileOutputStream(tmp)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+                write(out);
+                out.flush();
+                fos.getFD().sync();
+            }
+            if (!tmp.renameTo(mFile)) throw new IOException("Could not replace " + mFile.getAbsolutePath());
+        } catch (IOException e) {
+            tmp.delete();
+            Log.w(TAG, "Could not save controller cache", e);
+        }
+    }
+
+    private synchronized void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(mSdkInt);
+        out.writeUTF(mFingerprint);
+        out.writeInt(mEntries.size());
+        for (Map.Entry<String, Entry> kv : mEntries.entrySet()) {
+            Entry e = kv.getValue();
+            out.writeUTF(kv.getKey());
+            out.writeByte(e.flags);
+            out.writeInt(e.buttonMask);
+            out.writeInt(e.axisMask);
+            out.writeByte(e.hatCount);
+        }
+    }
+}
@@ -1,71 +1,101 @@
 package org.libsdl.app;
 
 import android.content.Context;
-import android.view.InputDevice;
+import android.content.res.Configuration;
+import android.graphics.Canvas;
+import android.os.SystemClock;
+import android.text.method.TransformationMethod;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.RelativeLayout;
+import android.widget.TextView;
 
 import org.ikemen_engine.ikemen_go.R;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ControllerOverlay extends RelativeLayout {
+    // Hit targets in priority order, matching the order the old per-view checks ran in
+    private static final int[] HIT_VIEW_IDS = {
+            R.id.left_analog, R.id.right_analog,
+            R.id.dp_up, R.id.dp_down, R.id.dp_left, R.id.dp_right,
+            R.id.btn_a, R.id.btn_b, R.id.btn_x, R.id.btn_y, R.id.btn_d, R.id.btn_z,
+            R.id.btn_w, R.id.btn_c, R.id.btn_start, R.id.btn_back,
+    };
+    private static final int[] HIT_CODES = {
+            PadGeometry.HIT_LEFT_STICK, PadGeometry.HIT_RIGHT_STICK,
+            -1, -1, -1, -1,
+            96, 97, 99, 100, 102, 103, // A, B, X, Y, LB, RB
+            4004, 4005, 108, 109,      // LT, RT, START, BACK
+    };
+
+    // Roughly a second of 4-finger input at 240 Hz
+    private static final int SAMPLE_RING_CAPACITY = 4096;
+
+    private static final String TAG = "ControllerOverlay";
+    private static final String LAYOUT_DIR = "pad_layouts";
+    private static final String DEFAULT_LAYOUT = "default";
+    // Sizes an element can be pinched to in edit mode, as a fraction of the shorter side
+    private static final float MIN_ELEMENT_SIZE = 0.05f;
+    private static final float MAX_ELEMENT_SIZE = 0.6f;
+    private static final String[] DPAD_LABELS = {"↑", "↓", "←", "→"};
+
     private int virtualDeviceId;
-    private int hatX, hatY = 0;
-    private final Map<Integer, Integer> pointerStates = new HashMap<>(); // PointerID -> Keycode/Axis
     private boolean isInitialized = false;
-
-    public int getPhysicalJoystickCount() {
-        int count = 0;
-        int[] deviceIds = InputDevice.getDeviceIds();
-        for (int id : deviceIds) {
-            InputDevice dev = InputDevice.getDevice(id);
-            // Check if the device is a physical joystick or gamepad
-            // OLD LOGIC: Checked only flags (Let sensors through)
-            // NEW LOGIC: Checks isRealGamepad (Stricter filtering by querying for buttons)
-            if (isRealGamepad(dev)) {
-                count++;
-            }
+    private final int[] viewLoc = new int[2];
+    private final int[] parentLoc = new int[2];
+    private final View[] targetViews = new View[HIT_VIEW_IDS.length];
+    private JoystickOverlay leftStick, rightStick;
+    private View dpadContainer, dpUp;
+
+    // Active layout. Until the player changes something it follows the XML, captured again on
+    // every layout since the XML anchors controls to the screen's edges
+    private String layoutName = DEFAULT_LAYOUT;
+    private VirtualPadLayout padLayout;
+    private boolean layoutCustomized;
+    private final int[] elementPrimitives = new int[VirtualPadLayout.MAX_ELEMENTS]; // Element -> first renderer primitive
+    private float labelTextSize;
+    private int labelTextColor;
+
+    // Edit mode: drag an element to move it, pinch to resize it
+    private boolean editMode;
+    private int editElement = -1;
+    private float editGrabX, editGrabY, editPinchStart, editStartWidth, editStartHeight;
+
+    // Touch samples go UI thread -> ring -> input thread -> translator -> SDL
+    private final PointerSampleRing sampleRing = new PointerSampleRing(SAMPLE_RING_CAPACITY);
+    private final VirtualPadTranslator translator = new VirtualPadTranslator(new VirtualPadTranslator.Output() {
+        @Override
+        public void submit(VirtualPadState state) {
+            if (SDLControllerManager.submitVirtualPadState(state)) publishVisuals(state);
         }
-        return count;
-    }
-
-    // Helper to distinguish real controllers from "Ghost" sensors
-    private boolean isRealGamepad(InputDevice device) {
-        if (device == null) return false;
-
-        int sources = device.getSources();
-        boolean isJoystick = ((sources & InputDevice.SOURCE_JOYSTICK) == InputDevice.SOURCE_JOYSTICK) ||
-                ((sources & InputDevice.SOURCE_GAMEPAD) == InputDevice.SOURCE_GAMEPAD);
-
-        // Must identify as joystick/gamepad
-        if (!isJoystick) return false;
-
-        // Ignore virtual devices (optional, prevents software loopbacks)
-        if (device.isVirtual()) return false;
-
-        // Ghost filter, does it have actual buttons?
-        // Sensors report as Joysticks but have NO buttons.
-        // Real gamepads always have at least one of these.
-        int[] keysToCheck = {
-                android.view.KeyEvent.KEYCODE_BUTTON_A,
-                android.view.KeyEvent.KEYCODE_BUTTON_B,
-                android.view.KeyEvent.KEYCODE_BUTTON_X,
-                android.view.KeyEvent.KEYCODE_BUTTON_Y,
-                android.view.KeyEvent.KEYCODE_BUTTON_START,
-                android.view.KeyEvent.KEYCODE_BUTTON_SELECT,
-        };
-
-        boolean[] hasKeys = device.hasKeys(keysToCheck);
-        for (boolean exists : hasKeys) {
-            if (exists) return true; // It has any of these buttons, it's a real gamepad
+
+        @Override
+        public void reset(VirtualPadState state) {
+            SDLControllerManager.resetVirtualPadState(state);
+            publishVisuals(state);
         }
+    });
+    private VirtualPadInputThread inputThread;
+    private int reportedDrops;
+    private InputTraceWriter inputTrace;
+
+    // Visual feedback trails the input thread and is applied at most once per frame
+    private final VirtualPadState publishedState = new VirtualPadState(); // Guarded by itself
+    private final VirtualPadState frameState = new VirtualPadState();
+    private final VirtualPadRenderer renderer;
+    private final AtomicBoolean visualsPending = new AtomicBoolean();
+    private final Runnable applyVisuals = this::applyVisuals;
 
-        return false; // No buttons, its a sensor, ignore it
+    public int getPhysicalJoystickCount() {
+        // Real gamepads only, not sensors that claim to be joysticks
+        return SDLControllerManager.getInputDevices().gamepadCount;
     }
 
     private void setupButton(View parent, int viewId, final int androidButtonId) {
@@ -117,288 +147,452 @@ public class ControllerOverlay extends RelativeLayout {
         return true;
     }
 
-    private int leftJoyPointerId = -1;
-    private int rightJoyPointerId = -1;
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        startInputThread();
+    }
+
+    private void startInputThread() {
+        inputThread = new VirtualPadInputThread(sampleRing, translator);
+        inputThread.setTrace(inputTrace);
+        inputThread.start();
+    }
+
+    // Hands queued samples to the input thread, bringing it back if it died; samples queued
+    // before the view is attached wait for the thread started then
+    private void wakeInputThread() {
+        int dropped = sampleRing.dropped();
+        if (dropped != reportedDrops) {
+            Log.w(TAG, "Input thread fell behind, dropped " + (dropped - reportedDrops) + " touch samples");
+            reportedDrops = dropped;
+        }
+        if (inputThread == null) return;
+        if (!inputThread.isAlive()) {
+            Log.e(TAG, "Virtual pad input thread died, restarting it");
+            startInputThread();
+        }
+        inputThread.wake();
+    }
+
+    /**
+     * Starts recording the virtual pad's input, and the calls it makes to SDL, to file. The
+     * trace begins the next time no finger is down. See {@link InputTraceReplayer}.
+     */
+    public void startInputTrace(File file) throws IOException {
+        stopInputTrace();
+        inputTrace = new InputTraceWriter(new FileOutputStream(file));
+        SDLControllerManager.setVirtualPadCallTap(inputTrace);
+        if (inputThread != null) inputThread.setTrace(inputTrace);
+    }
+
+    public void stopInputTrace() {
+        if (inputTrace == null) return;
+        if (inputThread != null) inputThread.setTrace(null);
+        SDLControllerManager.setVirtualPadCallTap(null);
+        try {
+            inputTrace.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Input trace is incomplete", e);
+        }
+        inputTrace = null;
+    }
+
+    public boolean isTracingInput() {
+        return inputTrace != null;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        stopInputTrace();
+        if (inputThread != null) {
+            inputThread.quit();
+            inputThread = null;
+        }
+        removeCallbacks(applyVisuals);
+        super.onDetachedFromWindow();
+    }
 
+    // Only queues the raw samples; the input thread does the translation and talks to SDL
     @Override
     public boolean onTouchEvent(MotionEvent event) {
+        if (editMode) {
+            handleEditTouch(event);
+            return true;
+        }
         int action = event.getActionMasked();
         int index = event.getActionIndex();
         int pId = event.getPointerId(index);
 
-        // Get raw coordinates for global hit detection
-        float x = event.getX(index);
-        float y = event.getY(index);
-
         if (action == MotionEvent.ACTION_DOWN || action == MotionEvent.ACTION_POINTER_DOWN) {
-            // Check Joysticks first
-            if (isViewAtLocation(findViewById(R.id.left_analog), x, y)) {
-                leftJoyPointerId = pId;
-            } else if (isViewAtLocation(findViewById(R.id.right_analog), x, y)) {
-                rightJoyPointerId = pId;
-            } else {
-                // If not a stick, it's a button/dpad
-                updatePointer(pId, getButtonAt(x, y));
-            }
+            sampleRing.put(PointerSampleRing.KIND_DOWN, pId, event.getX(index), event.getY(index), 0);
         } else if (action == MotionEvent.ACTION_MOVE) {
-            for (int i = 0; i < event.getPointerCount(); i++) {
-                int movePId = event.getPointerId(i); // The stable ID
-
-                // Get coordinates specifically for THIS pointer index
-                float mx = event.getX(i);
-                float my = event.getY(i);
-
-                if (movePId == leftJoyPointerId) {
-                    updateJoystickLogic(findViewById(R.id.left_analog), mx, my);
-                } else if (movePId == rightJoyPointerId) {
-                    updateJoystickLogic(findViewById(R.id.right_analog), mx, my);
-                } else {
-                    // Check if we are actually over a NEW button
-                    int currentButton = getButtonAt(mx, my);
-                    Integer lastButton = pointerStates.get(movePId);
-
-                    // Only update if the button under THIS finger has actually changed
-                    if (lastButton == null || currentButton != lastButton) {
-                        updatePointer(movePId, currentButton);
-                    }
+            // Android batches several samples into one move. Queue the older ones first, each
+            // closed on its own, so fast motions like quarter circles reach the engine as a
+            // time-ordered stream instead of only their final position
+            int historySize = event.getHistorySize();
+            for (int h = 0; h < historySize; h++) {
+                for (int i = 0; i < event.getPointerCount(); i++) {
+                    sampleRing.put(PointerSampleRing.KIND_MOVE, event.getPointerId(i),
+                            event.getHistoricalX(i, h), event.getHistoricalY(i, h), 0);
                 }
+                sampleRing.put(PointerSampleRing.KIND_END, 0, 0, 0, event.getHistoricalEventTime(h));
             }
-        } else if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_POINTER_UP || action == MotionEvent.ACTION_CANCEL) {
-            if (pId == leftJoyPointerId) {
-                resetJoystick(findViewById(R.id.left_analog));
-                leftJoyPointerId = -1;
-            } else if (pId == rightJoyPointerId) {
-                resetJoystick(findViewById(R.id.right_analog));
-                rightJoyPointerId = -1;
-            } else {
-                releasePointer(pId);
+            for (int i = 0; i < event.getPointerCount(); i++) {
+                sampleRing.put(PointerSampleRing.KIND_MOVE, event.getPointerId(i), event.getX(i), event.getY(i), 0);
             }
+        } else if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_POINTER_UP) {
+            sampleRing.put(PointerSampleRing.KIND_UP, pId, 0, 0, 0);
+        } else if (action == MotionEvent.ACTION_CANCEL) {
+            sampleRing.put(PointerSampleRing.KIND_CANCEL, pId, 0, 0, 0);
         }
 
-        updateDpadState(event);
+        sampleRing.put(PointerSampleRing.KIND_END, 0, 0, 0, event.getEventTime());
+        wakeInputThread();
         return true;
     }
 
-    private void updateJoystickLogic(View v, float x, float y) {
-        if (!(v instanceof JoystickOverlay)) return;
-        JoystickOverlay joy = (JoystickOverlay) v;
-
-        // LOCAL CENTER CALCULATION
-        float centerX = v.getLeft() + (v.getWidth() / 2f);
-        float centerY = v.getTop() + (v.getHeight() / 2f);
-        float radius = v.getWidth() / 3f;
+    // Input thread: remember the latest state and ask for it to be drawn on the next frame
+    private void publishVisuals(VirtualPadState state) {
+        synchronized (publishedState) {
+            publishedState.copyFrom(state);
+        }
+        if (visualsPending.compareAndSet(false, true)) {
+            postOnAnimation(applyVisuals);
+        }
+    }
 
-        float dx = x - centerX;
-        float dy = y - centerY;
-        float distance = (float) Math.sqrt(dx * dx + dy * dy);
+    // UI thread, once per frame at most: redraw whatever the latest pad state changed
+    private void applyVisuals() {
+        visualsPending.set(false);
+        synchronized (publishedState) {
+            frameState.copyFrom(publishedState);
+        }
+        if (renderState(frameState)) invalidate();
+    }
 
-        if (distance > radius) {
-            dx = (dx / distance) * radius;
-            dy = (dy / distance) * radius;
+    // Pushes a pad state into the renderer; returns whether anything needs redrawing
+    private boolean renderState(VirtualPadState state) {
+        if (padLayout == null) return false;
+        boolean dirty = false;
+        for (int i = 0; i < padLayout.elements.size(); i++) {
+            VirtualPadLayout.Element e = padLayout.elements.get(i);
+            int primitive = elementPrimitives[i];
+            if (primitive < 0) continue;
+            switch (e.kind) {
+                case VirtualPadLayout.KIND_STICK:
+                    dirty |= renderer.setKnob(primitive, axis(state, e.code), axis(state, e.code2));
+                    break;
+                case VirtualPadLayout.KIND_DPAD:
+                    // Base first, then the up, down, left and right arrows
+                    dirty |= renderer.setPressed(primitive + 1, state.hatY == -1);
+                    dirty |= renderer.setPressed(primitive + 2, state.hatY == 1);
+                    dirty |= renderer.setPressed(primitive + 3, state.hatX == -1);
+                    dirty |= renderer.setPressed(primitive + 4, state.hatX == 1);
+                    break;
+                default:
+                    boolean pressed = e.code >= 4000 ? axis(state, e.code - 4000) > 0 : state.isPressed(e.code);
+                    dirty |= renderer.setPressed(primitive, pressed);
+                    break;
+            }
         }
+        return dirty;
+    }
 
-        joy.updateVisualPos((v.getWidth()/2f) + dx, (v.getHeight()/2f) + dy);
-        joy.sendToSDL(dx / radius, dy / radius);
+    private static float axis(VirtualPadState state, int axis) {
+        return axis >= 0 && axis < VirtualPadState.AXIS_COUNT ? state.axes[axis] : 0;
     }
 
-    private void resetJoystick(View v) {
-        if (!(v instanceof JoystickOverlay)) return;
-        JoystickOverlay joy = (JoystickOverlay) v;
-        joy.updateVisualPos(v.getWidth()/2f, v.getHeight()/2f);
-        joy.sendToSDL(0, 0);
+    // Children are only kept to capture the default layout; the whole pad is drawn here in one pass
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        renderer.draw(canvas);
     }
 
-    private void updatePointer(int pointerId, int newCode) {
-        Integer oldCode = pointerStates.get(pointerId);
-//        if (oldCode != null && oldCode == newCode) return;
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+        rebuildGeometry();
+    }
 
-        if (oldCode != null && oldCode != -1) handleInput(oldCode, false);
-        if (newCode != -1) handleInput(newCode, true);
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        // The relayout this triggers rebuilds the geometry
+        requestLayout();
+    }
 
-        pointerStates.put(pointerId, newCode);
+    /**
+     * Switches to the named layout, e.g. one saved for the current game. A name with no saved
+     * layout follows the built-in one until the player edits it.
+     */
+    public void setLayout(String name) {
+        layoutName = (name == null || name.isEmpty()) ? DEFAULT_LAYOUT : name;
+        padLayout = null;
+        layoutCustomized = false;
+        rebuildGeometry();
     }
 
-    private void releasePointer(int pointerId) {
-        Integer lastCode = pointerStates.remove(pointerId);
-        if (lastCode != null && lastCode != -1) handleInput(lastCode, false);
+    // Throws away the active layout's customizations and goes back to the built-in one
+    public void resetLayout() {
+        if (!layoutFile(layoutName).delete()) Log.v(TAG, "No saved layout to reset for " + layoutName);
+        padLayout = null;
+        layoutCustomized = false;
+        rebuildGeometry();
     }
 
-    private void handleInput(final int code, boolean pressed) {
-        if (code == -1) return;
+    /**
+     * Tunes how the active layout's D-pad splits into directions: the share of the circle each
+     * diagonal gets, in degrees, and the inner deadzone and outer edge as fractions of its
+     * radius. Saved with the layout.
+     */
+    public void setDpadTuning(float diagonalDegrees, float deadzone, float outer) {
+        if (padLayout == null) return;
+        padLayout.dpadDiagonalDegrees = diagonalDegrees;
+        padLayout.dpadDeadzone = deadzone;
+        padLayout.dpadOuter = outer;
+        layoutCustomized = true;
+        saveLayout();
+        rebuildGeometry();
+    }
 
-        if (code >= 4000) { // TRIGGERS
-            int axis = code - 4000;
-            SDLControllerManager.onNativeJoy(virtualDeviceId, axis, pressed ? 1.0f : 0.0f);
-        }
-        else if (code >= 1000) {
-            // D-PAD visuals only (Logic remains in updateDpadState)
-        }
-        else { // STANDARD BUTTONS
-            if (pressed) {
-                SDLControllerManager.onNativeHat(virtualDeviceId, 0, hatX, hatY);
-                int result = SDLControllerManager.onNativePadDown(virtualDeviceId, code);
-                if (result < 0) {
-                    android.util.Log.e("SDL", "INPUT FAILURE: Device " + virtualDeviceId + " rejected button " + code);
-                }
-            } else {
-                SDLControllerManager.onNativePadUp(virtualDeviceId, code);
-            }
+    /** In edit mode touches move and resize controls instead of sending input. */
+    public void setEditMode(boolean enabled) {
+        if (editMode == enabled) return;
+        editMode = enabled;
+        editElement = -1;
+        if (enabled) {
+            // Let go of anything held when editing starts
+            sampleRing.put(PointerSampleRing.KIND_CANCEL, 0, 0, 0, 0);
+            sampleRing.put(PointerSampleRing.KIND_END, 0, 0, 0, SystemClock.uptimeMillis());
+            wakeInputThread();
+        } else if (layoutCustomized) {
+            saveLayout();
         }
+    }
 
-        // Always update visuals
-        updateButtonVisual(code, pressed);
-    }
-
-    private void updateButtonVisual(int code, boolean pressed) {
-        int viewId = -1;
-        switch (code) {
-            case 96:  viewId = R.id.btn_a; break;
-            case 97:  viewId = R.id.btn_b; break;
-            case 99:  viewId = R.id.btn_x; break;
-            case 100: viewId = R.id.btn_y; break;
-            case 102: viewId = R.id.btn_d; break;
-            case 103: viewId = R.id.btn_z; break;
-            case 108: viewId = R.id.btn_start; break;
-            case 109: viewId = R.id.btn_back; break;
-            case 1001: viewId = R.id.dp_up; break;
-            case 1002: viewId = R.id.dp_down; break;
-            case 1003: viewId = R.id.dp_left; break;
-            case 1004: viewId = R.id.dp_right; break;
-//            case 1005: viewId = R.id.dp_upleft; break;
-//            case 1006: viewId = R.id.dp_downright; break;
-//            case 1007: viewId = R.id.dp_downleft; break;
-//            case 1008: viewId = R.id.dp_upright; break;
-            case 4004: viewId = R.id.btn_w; break;
-            case 4005: viewId = R.id.btn_c; break;
-        }
+    public boolean isEditMode() {
+        return editMode;
+    }
 
-        if (viewId != -1) {
-            View v = findViewById(viewId);
-            if (v != null) v.setPressed(pressed);
-        }
+    private File layoutFile(String name) {
+        return new File(new File(getContext().getFilesDir(), LAYOUT_DIR), name + ".bin");
     }
 
-    private void updateDpadState(MotionEvent event) {
-        int newX = 0, newY = 0;
-        int action = event.getActionMasked();
+    private VirtualPadLayout loadLayout(String name) {
+        try {
+            return VirtualPadLayout.load(layoutFile(name));
+        } catch (IOException e) {
+            Log.w(TAG, "Ignoring unreadable pad layout " + name, e);
+            return null;
+        }
+    }
 
-        if (action != MotionEvent.ACTION_UP && action != MotionEvent.ACTION_CANCEL) {
-            View container = findViewById(R.id.dpad_container);
-            if (container == null) return;
+    private void saveLayout() {
+        File file = layoutFile(layoutName);
+        try {
+            if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+                throw new IOException("Could not create " + file.getParent());
+            }
+            padLayout.save(file);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not save pad layout " + layoutName, e);
+        }
+    }
 
-            // Use Local coordinates to match event.getX()
-            float centerX = container.getLeft() + (container.getWidth() / 2f);
-            float centerY = container.getTop() + (container.getHeight() / 2f);
-            float radius = container.getWidth() / 2f;
+    // Turns the active layout into hit-test and render data for the current overlay size
+    private void rebuildGeometry() {
+        float width = getWidth();
+        float height = getHeight();
+        if (width <= 0 || height <= 0) return;
 
-            for (int i = 0; i < event.getPointerCount(); i++) {
-                if (action == MotionEvent.ACTION_POINTER_UP && i == event.getActionIndex()) continue;
-
-                float x = event.getX(i);
-                float y = event.getY(i);
-
-                // Calculate distance from center (Pythagoras)
-                float dx = x - centerX;
-                float dy = y - centerY;
-                float distance = (float) Math.sqrt(dx * dx + dy * dy);
-
-                // Only process if the finger is actually touching the D-Pad area
-                // (with  a small "deadzone" in the middle so neutral is easy to hit)
-                if (distance > (radius * 0.2f) && distance < (radius * 1.5f)) {
-                    // Calculate angle in degrees (0 to 360)
-                    double angle = Math.toDegrees(Math.atan2(dy, dx));
-                    if (angle < 0) angle += 360;
-
-                    // Map angle to 8 directions with wider diagonals
-                    // Cardinals get 30 degrees, Diagonals get 60 degrees
-                    if (angle >= 345 || angle < 15)        newX = 1;  // Right (Narrower)
-                    else if (angle >= 15  && angle < 75)   { newX = 1; newY = 1; }   // Down-Right (Wider)
-                    else if (angle >= 75  && angle < 105)  newY = 1; // Down
-                    else if (angle >= 105 && angle < 165)  { newX = -1; newY = 1; }  // Down-Left
-                    else if (angle >= 165 && angle < 195)  newX = -1; // Left
-                    else if (angle >= 195 && angle < 255)  { newX = -1; newY = -1; } // Up-Left
-                    else if (angle >= 255 && angle < 285)  newY = -1; // Up
-                    else if (angle >= 285 && angle < 345)  { newX = 1; newY = -1; }  // Up-Right
-
-                    // Map angle to 8 directions
-//                    if (angle >= 337.5 || angle < 22.5)   newX = 1;  // Right
-//                    else if (angle >= 22.5  && angle < 67.5)  { newX = 1; newY = 1; }   // Down-Right
-//                    else if (angle >= 67.5  && angle < 112.5) newY = 1; // Down
-//                    else if (angle >= 112.5 && angle < 157.5) { newX = -1; newY = 1; }  // Down-Left
-//                    else if (angle >= 157.5 && angle < 202.5) newX = -1; // Left
-//                    else if (angle >= 202.5 && angle < 247.5) { newX = -1; newY = -1; } // Up-Left
-//                    else if (angle >= 247.5 && angle < 292.5) newY = -1; // Up
-//                    else if (angle >= 292.5 && angle < 337.5) { newX = 1; newY = -1; }  // Up-Right
-
-                    break; // One finger is enough for the D-pad
-                }
+        if (padLayout == null) {
+            padLayout = loadLayout(layoutName);
+            layoutCustomized = padLayout != null;
+        }
+        if (!layoutCustomized) padLayout = captureXmlLayout();
+
+        PadHitIndex hitIndex = new PadHitIndex();
+        PadGeometry geometry = new PadGeometry(hitIndex);
+        renderer.clear();
+        float unit = Math.min(width, height);
+        int sticks = 0;
+        boolean hasDpad = false;
+        for (int i = 0; i < padLayout.elements.size(); i++) {
+            VirtualPadLayout.Element e = padLayout.elements.get(i);
+            float w = e.width * unit;
+            float h = e.height * unit;
+            int left = Math.round(e.x * width - w / 2);
+            int top = Math.round(e.y * height - h / 2);
+            int right = Math.round(left + w);
+            int bottom = Math.round(top + h);
+            elementPrimitives[i] = -1;
+
+            switch (e.kind) {
+                case VirtualPadLayout.KIND_STICK:
+                    if (sticks == 2) continue; // SDL only gets two sticks from us
+                    hitIndex.add(left, top, right, bottom,
+                            sticks == PadGeometry.STICK_LEFT ? PadGeometry.HIT_LEFT_STICK : PadGeometry.HIT_RIGHT_STICK);
+                    geometry.setStick(sticks++, left, top, w, h, e.code, e.code2);
+                    elementPrimitives[i] = renderer.add(VirtualPadRenderer.SHAPE_STICK, left, top, right, bottom, null, 0, 0, 1f);
+                    break;
+                case VirtualPadLayout.KIND_DPAD:
+                    // Covers its whole square so buttons underneath can't be hit through it
+                    hitIndex.add(left, top, right, bottom, -1);
+                    if (!hasDpad) {
+                        geometry.setDpad(left, top, w, h,
+                                padLayout.dpadDiagonalDegrees, padLayout.dpadDeadzone, padLayout.dpadOuter);
+                    }
+                    hasDpad = true;
+                    elementPrimitives[i] = addDpadPrimitives(left, top, w, h);
+                    break;
+                default:
+                    hitIndex.add(left, top, right, bottom, e.code);
+                    elementPrimitives[i] = renderer.add(VirtualPadRenderer.SHAPE_BUTTON, left, top, right, bottom,
+                            e.label, labelTextSize, labelTextColor, 1f);
+                    break;
             }
         }
+        hitIndex.build(width, height);
+        // Goes through the ring so it takes effect in order with the touch samples around it
+        translator.postGeometry(geometry);
+        sampleRing.put(PointerSampleRing.KIND_GEOMETRY, 0, 0, 0, 0);
+        wakeInputThread();
+
+        // Fresh primitives start released; bring them back to the last state drawn
+        renderState(frameState);
+        invalidate();
+    }
 
-        if (newX != hatX || newY != hatY) {
-            hatX = newX;
-            hatY = newY;
-            SDLControllerManager.onNativeHat(virtualDeviceId, 0, hatX, hatY);
-            updateDpadVisual(hatX, hatY);
+    // Base plus one arrow per direction, each a third of the pad, like the old XML D-pad
+    private int addDpadPrimitives(int left, int top, float w, float h) {
+        int first = renderer.add(VirtualPadRenderer.SHAPE_DPAD_BASE, left, top,
+                Math.round(left + w), Math.round(top + h), null, 0, 0, 1f);
+        float aw = w / 3f;
+        float ah = h / 3f;
+        float[] arrowX = {aw, aw, 0, 2 * aw};   // Up, down, left, right
+        float[] arrowY = {0, 2 * ah, ah, ah};
+        for (int d = 0; d < 4; d++) {
+            int l = Math.round(left + arrowX[d]);
+            int t = Math.round(top + arrowY[d]);
+            renderer.add(VirtualPadRenderer.SHAPE_DPAD_ARROW, l, t, Math.round(l + aw), Math.round(t + ah),
+                    DPAD_LABELS[d], labelTextSize, labelTextColor, 0.5f);
         }
+        return first;
     }
 
-    private int getButtonAt(float x, float y) {
-        // Return -1 for analog sticks
-        if (isViewAtLocation(findViewById(R.id.left_analog), x, y)) return -1;
-        if (isViewAtLocation(findViewById(R.id.right_analog), x, y)) return -1;
-
-        // Return -1 for D-Pad so it doesn't enter the pointerStates map logic
-        if (isViewAtLocation(findViewById(R.id.dp_up), x, y)) return -1;
-        if (isViewAtLocation(findViewById(R.id.dp_down), x, y)) return -1;
-        if (isViewAtLocation(findViewById(R.id.dp_left), x, y)) return -1;
-        if (isViewAtLocation(findViewById(R.id.dp_right), x, y)) return -1;
-//        if (isViewAtLocation(findViewById(R.id.dp_upleft), x, y)) return -1;
-//        if (isViewAtLocation(findViewById(R.id.dp_downright), x, y)) return -1;
-//        if (isViewAtLocation(findViewById(R.id.dp_downleft), x, y)) return -1;
-//        if (isViewAtLocation(findViewById(R.id.dp_upright), x, y)) return -1;
-
-        // Physical Buttons
-        if (isViewAtLocation(findViewById(R.id.btn_a), x, y)) return 96;
-        if (isViewAtLocation(findViewById(R.id.btn_b), x, y)) return 97;
-        if (isViewAtLocation(findViewById(R.id.btn_x), x, y)) return 99;
-        if (isViewAtLocation(findViewById(R.id.btn_y), x, y)) return 100;
-        if (isViewAtLocation(findViewById(R.id.btn_d), x, y)) return 102; // LB
-        if (isViewAtLocation(findViewById(R.id.btn_z), x, y)) return 103; // RB
-        if (isViewAtLocation(findViewById(R.id.btn_w), x, y)) return 4004; // LT
-        if (isViewAtLocation(findViewById(R.id.btn_c), x, y)) return 4005; // RT
-        if (isViewAtLocation(findViewById(R.id.btn_start), x, y)) return 108;
-        if (isViewAtLocation(findViewById(R.id.btn_back), x, y)) return 109;
-        return -1;
+    // Builds a layout from where the XML put every control
+    private VirtualPadLayout captureXmlLayout() {
+        VirtualPadLayout layout = new VirtualPadLayout();
+        float width = getWidth();
+        float height = getHeight();
+        float unit = Math.min(width, height);
+        getLocationOnScreen(parentLoc); // Global position of the overlay
+
+        boolean dpadAdded = false;
+        for (int i = 0; i < targetViews.length; i++) {
+            View v = targetViews[i];
+            int code = HIT_CODES[i];
+            if (code == -1) {
+                // The arrows all belong to the one D-pad, added where the first one was
+                if (dpadAdded || dpadContainer == null) continue;
+                v = dpadContainer;
+                dpadAdded = true;
+            }
+            if (v == null || v.getVisibility() != View.VISIBLE) continue;
+
+            v.getLocationOnScreen(viewLoc);
+            float x = (viewLoc[0] - parentLoc[0] + v.getWidth() / 2f) / width;
+            float y = (viewLoc[1] - parentLoc[1] + v.getHeight() / 2f) / height;
+            float w = v.getWidth() / unit;
+            float h = v.getHeight() / unit;
+
+            if (v instanceof JoystickOverlay) {
+                JoystickOverlay joy = (JoystickOverlay) v;
+                layout.add(new VirtualPadLayout.Element(VirtualPadLayout.KIND_STICK,
+                        joy.getAxisX(), joy.getAxisY(), x, y, w, h, null));
+            } else if (v == dpadContainer) {
+                layout.add(new VirtualPadLayout.Element(VirtualPadLayout.KIND_DPAD, 0, 0, x, y, w, h, null));
+            } else {
+                String label = null;
+                if (v instanceof TextView) {
+                    TextView tv = (TextView) v;
+                    TransformationMethod transform = tv.getTransformationMethod();
+                    label = String.valueOf(transform != null ? transform.getTransformation(tv.getText(), tv) : tv.getText());
+                }
+                layout.add(new VirtualPadLayout.Element(VirtualPadLayout.KIND_BUTTON, code, 0, x, y, w, h, label));
+            }
+        }
+        return layout;
     }
 
-    private void updateDpadVisual(int hX, int hY) {
-        findViewById(R.id.dp_up).setPressed(hY == -1);
-        findViewById(R.id.dp_down).setPressed(hY == 1);
-        findViewById(R.id.dp_left).setPressed(hX == -1);
-        findViewById(R.id.dp_right).setPressed(hX == 1);
+    private void handleEditTouch(MotionEvent event) {
+        if (padLayout == null) return;
+        float width = getWidth();
+        float height = getHeight();
+        float unit = Math.min(width, height);
+
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN: {
+                float x = event.getX() / width;
+                float y = event.getY() / height;
+                editElement = -1;
+                for (int i = 0; i < padLayout.elements.size(); i++) {
+                    VirtualPadLayout.Element e = padLayout.elements.get(i);
+                    if (Math.abs(event.getX() - e.x * width) <= e.width * unit / 2
+                            && Math.abs(event.getY() - e.y * height) <= e.height * unit / 2) {
+                        editElement = i;
+                        editGrabX = x - e.x;
+                        editGrabY = y - e.y;
+                        break;
+                    }
+                }
+                break;
+            }
+            case MotionEvent.ACTION_POINTER_DOWN:
+                if (editElement >= 0 && event.getPointerCount() == 2) {
+                    VirtualPadLayout.Element e = padLayout.elements.get(editElement);
+                    editPinchStart = pinchDistance(event);
+                    editStartWidth = e.width;
+                    editStartHeight = e.height;
+                }
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (editElement < 0) break;
+                // From here on the layout is the player's and no longer follows the XML
+                layoutCustomized = true;
+                VirtualPadLayout.Element e = padLayout.elements.get(editElement);
+                if (event.getPointerCount() >= 2 && editPinchStart > 0) {
+                    float scale = pinchDistance(event) / editPinchStart;
+                    e.width = Math.max(MIN_ELEMENT_SIZE, Math.min(MAX_ELEMENT_SIZE, editStartWidth * scale));
+                    e.height = Math.max(MIN_ELEMENT_SIZE, Math.min(MAX_ELEMENT_SIZE, editStartHeight * scale));
+                } else {
+                    e.x = Math.max(0, Math.min(1, event.getX() / width - editGrabX));
+                    e.y = Math.max(0, Math.min(1, event.getY() / height - editGrabY));
+                }
+                rebuildGeometry();
+                break;
+            case MotionEvent.ACTION_POINTER_UP:
+                editPinchStart = 0;
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                if (editElement >= 0 && layoutCustomized) saveLayout();
+                editElement = -1;
+                editPinchStart = 0;
+                break;
+        }
     }
 
-    // Helper to check if a finger is inside a specific button's area
-    private boolean isViewAtLocation(View v, float x, float y) {
-        if (v == null || v.getVisibility() != View.VISIBLE) return false;
-
-        int[] vLoc = new int[2];
-        v.getLocationOnScreen(vLoc); // Global position of button
-
-        int[] parentLoc = new int[2];
-        this.getLocationOnScreen(parentLoc); // Global position of the overlay
-
-        // Get the position of the button RELATIVE to the overlay
-        int relativeLeft = vLoc[0] - parentLoc[0];
-        int relativeTop = vLoc[1] - parentLoc[1];
-
-        return x >= relativeLeft && x <= (relativeLeft + v.getWidth()) &&
-                y >= relativeTop && y <= (relativeTop + v.getHeight());
+    private static float pinchDistance(MotionEvent event) {
+        float dx = event.getX(1) - event.getX(0);
+        float dy = event.getY(1) - event.getY(0);
+        return (float) Math.sqrt(dx * dx + dy * dy);
     }
 
     public ControllerOverlay(Context context) {
         super(context);
+        renderer = new VirtualPadRenderer(getResources().getDisplayMetrics().density);
         this.setClickable(true);
         this.setFocusable(true);
         this.setEnabled(true);
@@ -408,12 +602,30 @@ public class ControllerOverlay extends RelativeLayout {
         LayoutInflater inflater = LayoutInflater.from(context);
         View vc = inflater.inflate(R.layout.virtual_controller, this, true);
         disableAllTouches(vc);
+        bindViews();
 
         // Causes issues with updating state
 //        setupDpad(vc);
 //        setupButtons(vc);
     }
 
+    // Look every view up once so the layout capture never has to walk the hierarchy again
+    private void bindViews() {
+        for (int i = 0; i < HIT_VIEW_IDS.length; i++) {
+            targetViews[i] = findViewById(HIT_VIEW_IDS[i]);
+        }
+        leftStick = findViewById(R.id.left_analog);
+        rightStick = findViewById(R.id.right_analog);
+        dpadContainer = findViewById(R.id.dpad_container);
+        dpUp = findViewById(R.id.dp_up);
+
+        // Every label is drawn with the text style the XML buttons have
+        if (dpUp instanceof TextView) {
+            labelTextSize = ((TextView) dpUp).getTextSize();
+            labelTextColor = ((TextView) dpUp).getCurrentTextColor();
+        }
+    }
+
     private void disableAllTouches(View v) {
         v.setClickable(false);
         v.setFocusable(false);
@@ -428,24 +640,21 @@ public class ControllerOverlay extends RelativeLayout {
     public void initializeVirtualController() {
         android.util.Log.i("ControllerOverlay", "DEBUG: initializing virtual joystick...");
         virtualDeviceId = getPhysicalJoystickCount();
-        pointerStates.clear();
-        hatX = 0;
-        hatY = 0;
         android.util.Log.i("ControllerOverlay", String.format("DEBUG: virtualDeviceID = %d", virtualDeviceId));
         SDLControllerManager.nativeRemoveJoystick(virtualDeviceId);
         ensureJoystickAlive();
         // Initialize the joysticks
-        JoystickOverlay ls = findViewById(R.id.left_analog);
-        ls.setAttrs(virtualDeviceId, 0, 1);
-
-        JoystickOverlay rs = findViewById(R.id.right_analog);
-        rs.setAttrs(virtualDeviceId, 2, 3);
+        leftStick.setAttrs(virtualDeviceId, 0, 1);
+        rightStick.setAttrs(virtualDeviceId, 2, 3);
 
         for (int i = 0; i < 6; i++) {
             SDLControllerManager.onNativeJoy(virtualDeviceId, i, 0.00390625f);
             SDLControllerManager.onNativeJoy(virtualDeviceId, i, 0.0f);
         }
         SDLControllerManager.onNativeHat(virtualDeviceId, 0, 0, 0);
+        // SDL now holds a neutral pad; the input thread only sends what changes from here
+        sampleRing.put(PointerSampleRing.KIND_RESET, virtualDeviceId, 0, 0, 0);
+        wakeInputThread();
         android.util.Log.i("ControllerOverlay", "DEBUG: virtual joystick initialized!");
         isInitialized = true;
     }
@@ -0,0 +1,136 @@
+package org.libsdl.app;
+
+/**
+ * Map from input device id to the handler's per-device record. Open addressing with linear
+ * probing on a plain int[], so a lookup from the motion event path neither boxes the id nor
+ * walks a list.
+ *
+ * Lookups may run on any thread while one other thread registers and removes devices: every
+ * change builds a new table and publishes it through one volatile field, so a lookup always
+ * probes a single consistent table. Changes only happen when devices come and go, so copying
+ * on each of them is cheap.
+ *
+ * Also finds which registered devices are gone, in time linear in the device count: call
+ * {@link #beginMark}, {@link #mark} every id that is still present, then {@link #unmarked}.
+ * Marking belongs to the thread making the changes.
+ */
+class DeviceRegistry<T> {
+    private static final int[] NO_KEYS = new int[0];
+
+    // Keys and values never change once published; marks are only used by the writing thread
+    private static final class Table {
+        final int[] keys;
+        final Object[] values; // null marks a free slot
+        final int[] marks;
+        final int size;
+
+        Table(int capacity, int size) {
+            keys = new int[capacity];
+            values = new Object[capacity];
+            marks = new int[capacity];
+            this.size = size;
+        }
+    }
+
+    private volatile Table mTable = new Table(16, 0);
+    private int mMark;
+
+    int size() {
+        return mTable.size;
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(int id) {
+        Table t = mTable;
+        int mask = t.keys.length - 1;
+        for (int slot = hash(id) & mask; t.values[slot] != null; slot = (slot + 1) & mask) {
+            if (t.keys[slot] == id) return (T) t.values[slot];
+        }
+        return null;
+    }
+
+    void put(int id, T value) {
+        if (value == null) throw new NullPointerException("value");
+        Table old = mTable;
+        boolean present = find(old, id) >= 0;
+        int size = present ? old.size : old.size + 1;
+        int capacity = old.keys.length;
+        while (size * 2 > capacity) capacity *= 2;
+
+        Table t = new Table(capacity, size);
+        int mask = capacity - 1;
+        for (int i = 0; i < old.keys.length; i++) {
+            if (old.values[i] == null || old.keys[i] == id) continue;
+            insert(t, mask, old.keys[i], old.values[i], old.marks[i]);
+        }
+        insert(t, mask, id, value, mMark);
+        mTable = t;
+    }
+
+    @SuppressWarnings("unchecked")
+    T remove(int id) {
+        Table old = mTable;
+        int found = find(old, id);
+        if (found < 0) return null;
+
+        // Rebuilt without it, so no probe run is left with a hole
+        Table t = new Table(old.keys.length, old.size - 1);
+        int mask = old.keys.length - 1;
+        for (int i = 0; i < old.keys.length; i++) {
+            if (old.values[i] == null || i == found) continue;
+            insert(t, mask, old.keys[i], old.values[i], old.marks[i]);
+        }
+        mTable = t;
+        return (T) old.values[found];
+    }
+
+    void beginMark() {
+        mMark++;
+    }
+
+    // Flags id as still present; ids that aren't registered are ignored
+    void mark(int id) {
+        Table t = mTable;
+        int slot = find(t, id);
+        if (slot >= 0) t.marks[slot] = mMark;
+    }
+
+    /** Returns the registered ids not marked since {@link #beginMark}. */
+    int[] unmarked() {
+        Table t = mTable;
+        int count = 0;
+        for (int slot = 0; slot < t.keys.length; slot++) {
+            if (t.values[slot] != null && t.marks[slot] != mMark) count++;
+        }
+        if (count == 0) return NO_KEYS;
+
+        int[] ids = new int[count];
+        count = 0;
+        for (int slot = 0; slot < t.keys.length; slot++) {
+            if (t.values[slot] != null && t.marks[slot] != mMark) ids[count++] = t.keys[slot];
+        }
+        return ids;
+    }
+
+    private static int find(Table t, int id) {
+        int mask = t.keys.length - 1;
+        for (int slot = hash(id) & mask; t.values[slot] != null; slot = (slot + 1) & mask) {
+            if (t.keys[slot] == id) return slot;
+        }
+        return -1;
+    }
+
+    private static void insert(Table t, int mask, int id, Object value, int mark) {
+        int slot = hash(id) & mask;
+        while (t.values[slot] != null) slot = (slot + 1) & mask;
+        t.keys[slot] = id;
+        t.values[slot] = value;
+        t.marks[slot] = mark;
+    }
+
+    // Device ids are small and sequential; spread them over the table
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
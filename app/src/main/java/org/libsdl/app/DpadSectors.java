@@ -0,0 +1,85 @@
+package org.libsdl.app;
+
+/**
+ * Lookup table mapping a finger's offset from the D-pad center to one of its eight directions.
+ * The square around the pad is cut into a grid and every cell is classified once, when the
+ * layout changes, so a touch costs one array read instead of a square root and an arctangent.
+ *
+ * The ring a finger counts in runs from deadzone to outer, both as fractions of the pad's
+ * radius; diagonals get diagonalDegrees of the circle each and cardinals share what is left.
+ */
+class DpadSectors {
+    static final float DEFAULT_DIAGONAL_DEGREES = 60f;
+    static final float DEFAULT_DEADZONE = 0.2f;
+    static final float DEFAULT_OUTER = 1.5f;
+
+    // Cells per side; one cell is 3/128 of the radius with the default outer edge
+    static final int RESOLUTION = 128;
+
+    // Sector 0 is "not on the pad" (inside the deadzone or past the outer edge), 1-8 run
+    // clockwise on screen starting at right
+    static final int NONE = 0;
+    private static final int[] HAT_X = {0, 1, 1, 0, -1, -1, -1, 0, 1};
+    private static final int[] HAT_Y = {0, 0, 1, 1, 1, 0, -1, -1, -1};
+
+    final float diagonalDegrees, deadzone, outer;
+
+    private final byte[] mSectors = new byte[RESOLUTION * RESOLUTION];
+    private final float mExtent; // Half the side of the square the grid covers, in pixels
+    private final float mCellsPerPixel;
+
+    DpadSectors(float radius, float diagonalDegrees, float deadzone, float outer) {
+        this.diagonalDegrees = Math.max(0f, Math.min(90f, diagonalDegrees));
+        this.deadzone = Math.max(0f, deadzone);
+        this.outer = Math.max(this.deadzone, outer);
+        mExtent = radius * this.outer;
+        mCellsPerPixel = mExtent > 0 ? RESOLUTION / (2 * mExtent) : 0;
+        if (mExtent > 0) fill(radius);
+    }
+
+    /** Returns the sector the offset (dx, dy) from the pad's center falls in, or NONE. */
+    int classify(float dx, float dy) {
+        float cx = (dx + mExtent) * mCellsPerPixel;
+        float cy = (dy + mExtent) * mCellsPerPixel;
+        if (cx < 0 || cy < 0 || cx >= RESOLUTION || cy >= RESOLUTION) return NONE;
+        return mSectors[(int) cy * RESOLUTION + (int) cx];
+    }
+
+    static int hatX(int sector) {
+        return HAT_X[sector];
+    }
+
+    static int hatY(int sector) {
+        return HAT_Y[sector];
+    }
+
+    // Classifies every cell by its center
+    private void fill(float radius) {
+        float cardinal = 90f - diagonalDegrees;
+        float inner = radius * deadzone;
+        float limit = radius * outer;
+        float cell = 2 * mExtent / RESOLUTION;
+        for (int row = 0; row < RESOLUTION; row++) {
+            float dy = (row + 0.5f) * cell - mExtent;
+            for (int col = 0; col < RESOLUTION; col++) {
+                float dx = (col + 0.5f) * cell - mExtent;
+                float distance = (float) Math.sqrt(dx * dx + dy * dy);
+                if (distance <= inner || distance >= limit) continue;
+
+                // Degrees clockwise from the start of the "right" sector
+                double angle = Math.toDegrees(Math.atan2(dy, dx)) + cardinal / 2;
+                if (angle < 0) angle += 360;
+                if (angle >= 360) angle -= 360;
+
+                int sector = 1;
+                for (int i = 0; i < 7; i++) {
+                    float width = (i & 1) == 0 ? cardinal : diagonalDegrees;
+                    if (angle < width) break;
+                    angle -= width;
+                    sector++;
+                }
+                mSectors[row * RESOLUTION + col] = (byte) sector;
+            }
+        }
+    }
+}
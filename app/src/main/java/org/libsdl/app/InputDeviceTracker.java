@@ -0,0 +1,139 @@
+package org.libsdl.app;
+
+import android.content.Context;
+import android.hardware.input.InputManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.InputDevice;
+import android.view.KeyEvent;
+
+/**
+ * Keeps an up to date snapshot of the connected input devices, rebuilt only when the system
+ * reports one was added, removed or changed. SDL's periodic device polls and the overlay read
+ * the snapshot instead of enumerating and probing every device each time, and can tell from
+ * its version whether anything happened since they last looked.
+ */
+class InputDeviceTracker implements InputManager.InputDeviceListener {
+    private static final String TAG = "InputDeviceTracker";
+
+    // Real gamepads always have at least one of these; sensors that claim to be joysticks don't
+    private static final int[] GAMEPAD_KEYS = {
+            KeyEvent.KEYCODE_BUTTON_A,
+            KeyEvent.KEYCODE_BUTTON_B,
+            KeyEvent.KEYCODE_BUTTON_X,
+            KeyEvent.KEYCODE_BUTTON_Y,
+            KeyEvent.KEYCODE_BUTTON_START,
+            KeyEvent.KEYCODE_BUTTON_SELECT,
+    };
+
+    /** Immutable view of the devices at one point in time. */
+    static final class Snapshot {
+        // Bumped on every rebuild; -1 for a snapshot taken without a tracker running
+        final int version;
+        // Every device id, and the subset SDL treats as joysticks
+        final int[] deviceIds;
+        final int[] joystickIds;
+        // Physical gamepads with real buttons, which take the first SDL joystick slots
+        final int gamepadCount;
+
+        Snapshot(int version, int[] deviceIds, int[] joystickIds, int gamepadCount) {
+            this.version = version;
+            this.deviceIds = deviceIds;
+            this.joystickIds = joystickIds;
+            this.gamepadCount = gamepadCount;
+        }
+    }
+
+    private final InputManager mInputManager;
+    private volatile Snapshot mSnapshot;
+    private int mVersion;
+
+    InputDeviceTracker(Context context) {
+        mInputManager = (InputManager) context.getSystemService(Context.INPUT_SERVICE);
+    }
+
+    // Must be called on the main thread; listens until the process ends
+    void start() {
+        if (mInputManager != null) {
+            // Registered before the first snapshot so nothing that happens in between is missed
+            mInputManager.registerInputDeviceListener(this, new Handler(Looper.getMainLooper()));
+        } else {
+            Log.w(TAG, "No input service, device changes won't be seen until the next restart");
+        }
+        rebuild();
+    }
+
+    Snapshot snapshot() {
+        return mSnapshot;
+    }
+
+    @Override
+    public void onInputDeviceAdded(int deviceId) {
+        rebuild();
+    }
+
+    @Override
+    public void onInputDeviceRemoved(int deviceId) {
+        rebuild();
+    }
+
+    @Override
+    public void onInputDeviceChanged(int deviceId) {
+        rebuild();
+    }
+
+    private void rebuild() {
+        mSnapshot = scan(mVersion++);
+    }
+
+    /** Enumerates and probes every device now. */
+    static Snapshot scan(int version) {
+        int[] deviceIds = InputDevice.getDeviceIds();
+        int[] joystickIds = new int[deviceIds.length];
+        int joysticks = 0, gamepads = 0;
+        for (int id : deviceIds) {
+            InputDevice device = InputDevice.getDevice(id);
+            if (device == null) continue;
+            if (SDLControllerManager.isDeviceSDLJoystick(id)) joystickIds[joysticks++] = id;
+            if (isRealGamepad(device, SDLControllerManager.getCapabilities())) gamepads++;
+        }
+        return new Snapshot(version, deviceIds, java.util.Arrays.copyOf(joystickIds, joysticks), gamepads);
+    }
+
+    // Helper to distinguish real controllers from "Ghost" sensors; known models skip the probe
+    static boolean isRealGamepad(InputDevice device, ControllerCapabilityCache caps) {
+        if (device == null) return false;
+
+        int sources = device.getSources();
+        boolean isJoystick = ((sources & InputDevice.SOURCE_JOYSTICK) == InputDevice.SOURCE_JOYSTICK) ||
+                ((sources & InputDevice.SOURCE_GAMEPAD) == InputDevice.SOURCE_GAMEPAD);
+
+        // Must identify as joystick/gamepad
+        if (!isJoystick) return false;
+
+        // Ignore virtual devices (optional, prevents software loopbacks)
+        if (device.isVirtual()) return false;
+
+        String key = caps != null ? ControllerCapabilityCache.key(device) : null;
+        ControllerCapabilityCache.Entry cached = caps != null ? caps.get(key) : null;
+        if (cached != null && cached.has(ControllerCapabilityCache.Entry.HAS_GAMEPAD)) {
+            return cached.has(ControllerCapabilityCache.Entry.IS_GAMEPAD);
+        }
+        boolean gamepad = hasGamepadButtons(device);
+        if (caps != null) caps.putGamepad(key, gamepad);
+        return gamepad;
+    }
+
+    private static boolean hasGamepadButtons(InputDevice device) {
+        // Ghost filter, does it have actual buttons?
+        // Sensors report as Joysticks but have NO buttons.
+        // Real gamepads always have at least one of these.
+        boolean[] hasKeys = device.hasKeys(GAMEPAD_KEYS);
+        for (boolean exists : hasKeys) {
+            if (exists) return true; // It has any of these buttons, it's a real gamepad
+        }
+
+        return false; // No buttons, its a sensor, ignore it
+    }
+}
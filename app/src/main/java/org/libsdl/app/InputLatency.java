@@ -0,0 +1,70 @@
+package org.libsdl.app;
+
+import android.os.Build;
+import android.view.MotionEvent;
+
+import java.util.Locale;
+
+/**
+ * Measures how long input takes from its MotionEvent timestamp to the point it is handed to
+ * SDL, with one {@link LatencyHistogram} per input source. Recording is off unless enabled
+ * (debuggable builds turn it on), and is allocation-free when on. Both MotionEvent times and
+ * System.nanoTime() are CLOCK_MONOTONIC on Android, so they can be subtracted directly.
+ */
+public class InputLatency {
+    public static final int SOURCE_VIRTUAL_PAD = 0;
+    public static final int SOURCE_TOUCH = 1;
+    public static final int SOURCE_JOYSTICK = 2;
+    private static final String[] SOURCE_NAMES = {"virtual pad", "touch", "joystick"};
+
+    private static final LatencyHistogram[] mHistograms = {
+            new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram(),
+    };
+    private static volatile boolean mEnabled;
+
+    public static void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return mEnabled;
+    }
+
+    // Records input from the given event, delivered just now
+    public static void record(int source, MotionEvent event) {
+        if (!mEnabled) return;
+        long eventNanos = Build.VERSION.SDK_INT >= 34 /* Android 14 (U) */
+                ? event.getEventTimeNanos() : event.getEventTime() * 1000000L;
+        recordNanos(source, eventNanos);
+    }
+
+    // Records input from an event at the given uptime, in milliseconds, delivered just now
+    public static void recordMillis(int source, long eventTimeMillis) {
+        if (!mEnabled) return;
+        recordNanos(source, eventTimeMillis * 1000000L);
+    }
+
+    private static void recordNanos(int source, long eventNanos) {
+        mHistograms[source].record((System.nanoTime() - eventNanos) / 1000);
+    }
+
+    public static void reset() {
+        for (LatencyHistogram h : mHistograms) h.reset();
+    }
+
+    /**
+     * One line per source with sample count and p50/p90/p99/max in milliseconds, for logs,
+     * dumpsys and the debug overlay.
+     */
+    public static String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < mHistograms.length; i++) {
+            LatencyHistogram h = mHistograms[i];
+            if (i > 0) sb.append('\n');
+            sb.append(String.format(Locale.US, "%-11s n=%-6d p50=%.1f p90=%.1f p99=%.1f max=%.1f ms",
+                    SOURCE_NAMES[i], h.count(), h.percentile(50) / 1000f, h.percentile(90) / 1000f,
+                    h.percentile(99) / 1000f, h.max() / 1000f));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,52 @@
+package org.libsdl.app;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.util.TypedValue;
+import android.widget.TextView;
+
+/**
+ * Debug overlay showing {@link InputLatency#dump()}, refreshed twice a second while attached,
+ * plus an optional status line. Only added in debuggable builds.
+ */
+public class InputLatencyView extends TextView {
+    private static final long REFRESH_INTERVAL_MS = 500;
+
+    private String status;
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            setText(status == null ? InputLatency.dump() : InputLatency.dump() + "\n" + status);
+            postDelayed(this, REFRESH_INTERVAL_MS);
+        }
+    };
+
+    public InputLatencyView(Context context) {
+        super(context);
+        setTypeface(Typeface.MONOSPACE);
+        setTextSize(TypedValue.COMPLEX_UNIT_SP, 10);
+        setTextColor(Color.WHITE);
+        setBackgroundColor(0x88000000);
+    }
+
+    // Extra line shown under the histograms, or null for none
+    public void setStatus(String status) {
+        this.status = status;
+        removeCallbacks(refresh);
+        post(refresh);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        post(refresh);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        removeCallbacks(refresh);
+        super.onDetachedFromWindow();
+    }
+}
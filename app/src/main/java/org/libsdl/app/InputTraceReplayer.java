@@ -0,0 +1,257 @@
+package org.libsdl.app;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * Runs a trace written by {@link InputTraceWriter} through a fresh {@link VirtualPadTranslator}
+ * with SDL stubbed out, and checks that it makes exactly the calls the device made. Used to
+ * reproduce input bugs and to benchmark the translation path on a desktop JVM:
+ *
+ *   java -cp &lt;classes&gt; org.libsdl.app.InputTraceReplayer trace.bin...
+ */
+class InputTraceReplayer {
+
+    static class Result {
+        long samples;
+        long calls;
+        long mismatches;
+        String firstMismatch;
+        long elapsedNanos;
+
+        double samplesPerSecond() {
+            return elapsedNanos > 0 ? samples * 1e9 / elapsedNanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d samples, %d calls, %d mismatches, %.0f samples/s%s",
+                    samples, calls, mismatches, samplesPerSecond(),
+                    firstMismatch != null ? " (first: " + firstMismatch + ")" : "");
+        }
+    }
+
+    // Calls the translator produced that the trace hasn't matched yet, as (tag, device, a, b)
+    private int[] mPending = new int[64];
+    private int mPendingHead, mPendingTail;
+    private final Result mResult = new Result();
+    private final VirtualPadState.Sink mSink;
+
+    private final VirtualPadState mSubmitted = new VirtualPadState();
+    private final VirtualPadTranslator mTranslator = new VirtualPadTranslator(new VirtualPadTranslator.Output() {
+        @Override
+        public void submit(VirtualPadState state) {
+            state.submit(mSubmitted, mProduced);
+        }
+
+        @Override
+        public void reset(VirtualPadState state) {
+            mSubmitted.copyFrom(state);
+        }
+    });
+
+    private final VirtualPadState.Sink mProduced = new VirtualPadState.Sink() {
+        @Override
+        public void padDown(int deviceId, int keycode) {
+            produce(InputTraceWriter.TAG_PAD_DOWN, deviceId, keycode, 0);
+            if (mSink != null) mSink.padDown(deviceId, keycode);
+        }
+
+        @Override
+        public void padUp(int deviceId, int keycode) {
+            produce(InputTraceWriter.TAG_PAD_UP, deviceId, keycode, 0);
+            if (mSink != null) mSink.padUp(deviceId, keycode);
+        }
+
+        @Override
+        public void joy(int deviceId, int axis, float value) {
+            produce(InputTraceWriter.TAG_JOY, deviceId, axis, Float.floatToIntBits(value));
+            if (mSink != null) mSink.joy(deviceId, axis, value);
+        }
+
+        @Override
+        public void hat(int deviceId, int hatId, int x, int y) {
+            produce(InputTraceWriter.TAG_HAT, deviceId, hatId, (x << 16) | (y & 0xFFFF));
+            if (mSink != null) mSink.hat(deviceId, hatId, x, y);
+        }
+    };
+
+    private InputTraceReplayer(VirtualPadState.Sink sink) {
+        mSink = sink;
+    }
+
+    /**
+     * Replays a whole trace. Calls the translator makes are also forwarded to sink, if given.
+     */
+    static Result replay(InputStream in, VirtualPadState.Sink sink) throws IOException {
+        return new InputTraceReplayer(sink).run(new DataInputStream(new BufferedInputStream(in, 65536)));
+    }
+
+    private Result run(DataInputStream in) throws IOException {
+        if (in.readInt() != InputTraceWriter.MAGIC) throw new IOException("Not an input trace");
+        int version = in.readUnsignedShort();
+        if (version != InputTraceWriter.VERSION) throw new IOException("Unsupported input trace version " + version);
+
+        long start = System.nanoTime();
+        while (true) {
+            int tag;
+            try {
+                tag = in.readUnsignedByte();
+            } catch (EOFException e) {
+                break;
+            }
+            switch (tag) {
+                case InputTraceWriter.TAG_GEOMETRY:
+                    mTranslator.setGeometry(in.readBoolean() ? readGeometry(in) : null);
+                    break;
+                case InputTraceWriter.TAG_FILTER:
+                    mTranslator.setStickFilter(new AxisFilter.Settings(in.readFloat(), in.readBoolean(),
+                            in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat()));
+                    break;
+                case InputTraceWriter.TAG_RESET:
+                    mTranslator.reset(in.readInt());
+                    break;
+                case InputTraceWriter.TAG_SAMPLE:
+                    replaySample(in);
+                    break;
+                case InputTraceWriter.TAG_PAD_DOWN:
+                case InputTraceWriter.TAG_PAD_UP:
+                    expect(tag, in.readInt(), in.readInt(), 0);
+                    break;
+                case InputTraceWriter.TAG_JOY:
+                case InputTraceWriter.TAG_HAT:
+                    expect(tag, in.readInt(), in.readInt(), in.readInt());
+                    break;
+                default:
+                    throw new IOException("Corrupt input trace: unknown tag " + tag);
+            }
+        }
+        // Anything the translator sent that the device didn't
+        while (mPendingHead != mPendingTail) {
+            mismatch("extra " + describe(mPending, mPendingHead));
+            mPendingHead += 4;
+        }
+        mResult.elapsedNanos = System.nanoTime() - start;
+        return mResult;
+    }
+
+    private void replaySample(DataInputStream in) throws IOException {
+        int kind = in.readUnsignedByte();
+        mResult.samples++;
+        switch (kind) {
+            case PointerSampleRing.KIND_DOWN:
+                mTranslator.pointerDown(in.readUnsignedByte(), in.readFloat(), in.readFloat());
+                break;
+            case PointerSampleRing.KIND_MOVE:
+                mTranslator.pointerMove(in.readUnsignedByte(), in.readFloat(), in.readFloat());
+                break;
+            case PointerSampleRing.KIND_UP:
+                mTranslator.pointerUp(in.readUnsignedByte());
+                break;
+            case PointerSampleRing.KIND_CANCEL:
+                in.readUnsignedByte();
+                mTranslator.cancel();
+                break;
+            case PointerSampleRing.KIND_END:
+                mTranslator.endSample(in.readLong());
+                break;
+            case PointerSampleRing.KIND_SETTLE:
+                mTranslator.settle(in.readLong());
+                break;
+            default:
+                throw new IOException("Corrupt input trace: unknown sample kind " + kind);
+        }
+    }
+
+    private void produce(int tag, int deviceId, int a, int b) {
+        if (mPendingTail + 4 > mPending.length) {
+            // Compact, growing only if the unmatched calls really don't fit
+            int live = mPendingTail - mPendingHead;
+            int[] target = live + 4 > mPending.length ? new int[mPending.length * 2] : mPending;
+            System.arraycopy(mPending, mPendingHead, target, 0, live);
+            mPending = target;
+            mPendingHead = 0;
+            mPendingTail = live;
+        }
+        mPending[mPendingTail] = tag;
+        mPending[mPendingTail + 1] = deviceId;
+        mPending[mPendingTail + 2] = a;
+        mPending[mPendingTail + 3] = b;
+        mPendingTail += 4;
+    }
+
+    private void expect(int tag, int deviceId, int a, int b) {
+        mResult.calls++;
+        if (mPendingHead == mPendingTail) {
+            mismatch("missing " + describe(new int[] {tag, deviceId, a, b}, 0));
+            return;
+        }
+        int[] p = mPending;
+        int h = mPendingHead;
+        if (p[h] != tag || p[h + 1] != deviceId || p[h + 2] != a || p[h + 3] != b) {
+            mismatch("expected " + describe(new int[] {tag, deviceId, a, b}, 0) + ", got " + describe(p, h));
+        }
+        mPendingHead += 4;
+    }
+
+    private void mismatch(String what) {
+        if (mResult.mismatches++ == 0) mResult.firstMismatch = what + " after sample " + mResult.samples;
+    }
+
+    private static String describe(int[] call, int i) {
+        switch (call[i]) {
+            case InputTraceWriter.TAG_PAD_DOWN: return "padDown(" + call[i + 1] + ", " + call[i + 2] + ")";
+            case InputTraceWriter.TAG_PAD_UP: return "padUp(" + call[i + 1] + ", " + call[i + 2] + ")";
+            case InputTraceWriter.TAG_JOY:
+                return "joy(" + call[i + 1] + ", " + call[i + 2] + ", " + Float.intBitsToFloat(call[i + 3]) + ")";
+            default:
+                return "hat(" + call[i + 1] + ", " + call[i + 2] + ", " + (call[i + 3] >> 16) + ", " + (short) call[i + 3] + ")";
+        }
+    }
+
+    static PadGeometry readGeometry(DataInputStream in) throws IOException {
+        float width = in.readFloat();
+        float height = in.readFloat();
+        int count = in.readUnsignedByte();
+        PadHitIndex hits = new PadHitIndex();
+        for (int i = 0; i < count; i++) {
+            hits.add(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(), in.readInt());
+        }
+        hits.build(width, height);
+
+        PadGeometry g = new PadGeometry(hits);
+        for (int s = 0; s < 2; s++) {
+            g.stickCenterX[s] = in.readFloat();
+            g.stickCenterY[s] = in.readFloat();
+            g.stickRadius[s] = in.readFloat();
+            g.stickAxisX[s] = in.readUnsignedByte();
+            g.stickAxisY[s] = in.readUnsignedByte();
+        }
+        g.dpadCenterX = in.readFloat();
+        g.dpadCenterY = in.readFloat();
+        g.dpadRadius = in.readFloat();
+        if (in.readBoolean()) g.dpadSectors = new DpadSectors(g.dpadRadius, in.readFloat(), in.readFloat(), in.readFloat());
+        return g;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: InputTraceReplayer trace.bin...");
+            System.exit(2);
+        }
+        boolean ok = true;
+        for (String path : args) {
+            try (InputStream in = new FileInputStream(path)) {
+                Result r = replay(in, null);
+                System.out.println(path + ": " + r);
+                ok &= r.mismatches == 0;
+            }
+        }
+        System.exit(ok ? 0 : 1);
+    }
+}
@@ -0,0 +1,195 @@
+package org.libsdl.app;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Records what the virtual pad's input thread sees (raw pointer samples, stick settles,
+ * geometry and stick filter changes) and what it sends to SDL, as a compact binary trace that
+ * {@link InputTraceReplayer} can run again off-device. A trace only starts once {@link #begin} is called with the pad neutral, so
+ * replaying it from a fresh translator reproduces the same calls.
+ *
+ * Format: magic, version, then tagged records. Samples store only the fields their kind uses.
+ */
+class InputTraceWriter implements VirtualPadState.Sink {
+    static final int MAGIC = 0x494B5452; // "IKTR"
+    static final int VERSION = 4;
+
+    static final int TAG_GEOMETRY = 1;
+    static final int TAG_RESET = 2;
+    static final int TAG_SAMPLE = 3;
+    static final int TAG_PAD_DOWN = 4;
+    static final int TAG_PAD_UP = 5;
+    static final int TAG_JOY = 6;
+    static final int TAG_HAT = 7;
+    static final int TAG_FILTER = 8;
+
+    private final DataOutputStream mOut;
+    private boolean mStarted, mClosed;
+    private IOException mError;
+
+    InputTraceWriter(OutputStream out) throws IOException {
+        mOut = new DataOutputStream(new BufferedOutputStream(out, 65536));
+        mOut.writeInt(MAGIC);
+        mOut.writeShort(VERSION);
+    }
+
+    synchronized boolean isStarted() {
+        return mStarted;
+    }
+
+    // Starts recording from a neutral pad on the given device, geometry and stick filter
+    synchronized void begin(int deviceId, PadGeometry geometry, AxisFilter.Settings filter) {
+        if (mClosed || mStarted) return;
+        mStarted = true;
+        geometry(geometry);
+        filter(filter);
+        reset(deviceId);
+    }
+
+    synchronized void geometry(PadGeometry g) {
+        if (!mStarted || mClosed) return;
+        try {
+            mOut.writeByte(TAG_GEOMETRY);
+            mOut.writeBoolean(g != null);
+            if (g == null) return;
+            writeGeometry(mOut, g);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    synchronized void filter(AxisFilter.Settings f) {
+        if (!mStarted || mClosed) return;
+        try {
+            mOut.writeByte(TAG_FILTER);
+            mOut.writeFloat(f.deadzone);
+            mOut.writeBoolean(f.radial);
+            mOut.writeFloat(f.curve);
+            mOut.writeFloat(f.step);
+            mOut.writeFloat(f.minCutoff);
+            mOut.writeFloat(f.beta);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    synchronized void reset(int deviceId) {
+        if (!mStarted || mClosed) return;
+        try {
+            mOut.writeByte(TAG_RESET);
+            mOut.writeInt(deviceId);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    synchronized void sample(int kind, int pointer, float x, float y, long time) {
+        if (!mStarted || mClosed) return;
+        try {
+            mOut.writeByte(TAG_SAMPLE);
+            mOut.writeByte(kind);
+            switch (kind) {
+                case PointerSampleRing.KIND_DOWN:
+                case PointerSampleRing.KIND_MOVE:
+                    mOut.writeByte(pointer);
+                    mOut.writeFloat(x);
+                    mOut.writeFloat(y);
+                    break;
+                case PointerSampleRing.KIND_UP:
+                case PointerSampleRing.KIND_CANCEL:
+                    mOut.writeByte(pointer);
+                    break;
+                case PointerSampleRing.KIND_END:
+                case PointerSampleRing.KIND_SETTLE:
+                    mOut.writeLong(time);
+                    break;
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public synchronized void padDown(int deviceId, int keycode) {
+        writeCall(TAG_PAD_DOWN, deviceId, keycode, 0);
+    }
+
+    @Override
+    public synchronized void padUp(int deviceId, int keycode) {
+        writeCall(TAG_PAD_UP, deviceId, keycode, 0);
+    }
+
+    @Override
+    public synchronized void joy(int deviceId, int axis, float value) {
+        writeCall(TAG_JOY, deviceId, axis, Float.floatToIntBits(value));
+    }
+
+    @Override
+    public synchronized void hat(int deviceId, int hatId, int x, int y) {
+        writeCall(TAG_HAT, deviceId, hatId, (x << 16) | (y & 0xFFFF));
+    }
+
+    private void writeCall(int tag, int deviceId, int a, int b) {
+        if (!mStarted || mClosed) return;
+        try {
+            mOut.writeByte(tag);
+            mOut.writeInt(deviceId);
+            mOut.writeInt(a);
+            if (tag != TAG_PAD_DOWN && tag != TAG_PAD_UP) mOut.writeInt(b);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /** Flushes and closes the trace; throws the first write error, if there was one. */
+    synchronized void close() throws IOException {
+        if (mClosed) return;
+        mClosed = true;
+        try {
+            mOut.close();
+        } catch (IOException e) {
+            if (mError == null) mError = e;
+        }
+        if (mError != null) throw mError;
+    }
+
+    // Recording stops at the first error rather than producing a trace with holes in it
+    private void fail(IOException e) {
+        if (mError == null) mError = e;
+        mClosed = true;
+    }
+
+    static void writeGeometry(DataOutputStream out, PadGeometry g) throws IOException {
+        PadHitIndex hits = g.hitIndex;
+        out.writeFloat(hits.width());
+        out.writeFloat(hits.height());
+        out.writeByte(hits.count());
+        for (int i = 0; i < hits.count(); i++) {
+            out.writeFloat(hits.left(i));
+            out.writeFloat(hits.top(i));
+            out.writeFloat(hits.right(i));
+            out.writeFloat(hits.bottom(i));
+            out.writeInt(hits.code(i));
+        }
+        for (int s = 0; s < 2; s++) {
+            out.writeFloat(g.stickCenterX[s]);
+            out.writeFloat(g.stickCenterY[s]);
+            out.writeFloat(g.stickRadius[s]);
+            out.writeByte(g.stickAxisX[s]);
+            out.writeByte(g.stickAxisY[s]);
+        }
+        out.writeFloat(g.dpadCenterX);
+        out.writeFloat(g.dpadCenterY);
+        out.writeFloat(g.dpadRadius);
+        DpadSectors sectors = g.dpadSectors;
+        out.writeBoolean(sectors != null);
+        if (sectors != null) {
+            out.writeFloat(sectors.diagonalDegrees);
+            out.writeFloat(sectors.deadzone);
+            out.writeFloat(sectors.outer);
+        }
+    }
+}
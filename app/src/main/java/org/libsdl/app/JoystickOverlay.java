@@ -13,6 +13,12 @@ import org.ikemen_engine.ikemen_go.R;
 public class JoystickOverlay extends View {
     private int deviceId = 0, axisX = 0, axisY = 0;
     private float centerX, centerY, stickX, stickY, radius;
+    private final Paint basePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint stickPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    {
+        basePaint.setColor(0x44FFFFFF);
+        stickPaint.setColor(0x88FFFFFF);
+    }
 
     public JoystickOverlay(Context context) {
         super(context);
@@ -72,6 +78,14 @@ public class JoystickOverlay extends View {
         stickY = centerY;
     }
 
+    public int getAxisX() {
+        return axisX;
+    }
+
+    public int getAxisY() {
+        return axisY;
+    }
+
     public void updateVisualPos(float x, float y) {
         this.stickX = x;
         this.stickY = y;
@@ -100,14 +114,10 @@ public class JoystickOverlay extends View {
             stickY = centerY;
         }
 
-        Paint p = new Paint(Paint.ANTI_ALIAS_FLAG);
-
         // Draw Background
-        p.setColor(0x44FFFFFF);
-        canvas.drawCircle(centerX, centerY, radius, p);
+        canvas.drawCircle(centerX, centerY, radius, basePaint);
 
         // Draw Stick Head
-        p.setColor(0x88FFFFFF);
-        canvas.drawCircle(stickX, stickY, radius / 2.0f, p);
+        canvas.drawCircle(stickX, stickY, radius / 2.0f, stickPaint);
     }
 }
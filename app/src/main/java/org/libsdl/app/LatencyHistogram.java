@@ -0,0 +1,88 @@
+package org.libsdl.app;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, lock-free histogram of latencies in microseconds. Buckets are log-linear in the
+ * HdrHistogram style: each power of two is split into 8 sub-buckets, so any recorded value is
+ * off by at most ~12%, and everything is preallocated so recording never allocates.
+ * Values of 2^24 us (~16 s) or more land in the last bucket.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 24;
+    static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mTotal = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    static int bucketFor(long micros) {
+        if (micros < SUB_BUCKETS) return (int) Math.max(0, micros);
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+        if (magnitude >= MAX_MAGNITUDE) return BUCKET_COUNT - 1;
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int sub = (int) (micros >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    // Smallest value that maps to the given bucket
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    }
+
+    void record(long micros) {
+        if (micros < 0) micros = 0; // Clock skew between the event and us
+        mCounts.incrementAndGet(bucketFor(micros));
+        mCount.incrementAndGet();
+        mTotal.addAndGet(micros);
+        long max = mMax.get();
+        while (micros > max && !mMax.compareAndSet(max, micros)) {
+            max = mMax.get();
+        }
+    }
+
+    long count() {
+        return mCount.get();
+    }
+
+    long max() {
+        return mMax.get();
+    }
+
+    long mean() {
+        long count = mCount.get();
+        return count == 0 ? 0 : mTotal.get() / count;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile (0-100), or 0 if nothing was
+     * recorded. Concurrent recording may make this slightly stale, never wrong by more than
+     * the samples recorded meanwhile.
+     */
+    long percentile(double percentile) {
+        long count = mCount.get();
+        if (count == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts.get(i);
+            if (seen >= target) {
+                return i == BUCKET_COUNT - 1 ? mMax.get() : Math.min(lowerBound(i + 1) - 1, mMax.get());
+            }
+        }
+        return mMax.get();
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) mCounts.set(i, 0);
+        mCount.set(0);
+        mTotal.set(0);
+        mMax.set(0);
+    }
+}
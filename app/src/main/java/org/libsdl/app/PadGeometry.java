@@ -0,0 +1,48 @@
+package org.libsdl.app;
+
+/**
+ * Immutable snapshot of where everything on the virtual pad is, in overlay coordinates. The
+ * UI thread builds a new one on every layout and hands it to the input thread, which only
+ * ever reads it.
+ */
+class PadGeometry {
+    // Hit codes for the sticks; buttons use their keycode/axis code and the D-pad uses -1
+    static final int HIT_LEFT_STICK = -2;
+    static final int HIT_RIGHT_STICK = -3;
+
+    static final int STICK_LEFT = 0;
+    static final int STICK_RIGHT = 1;
+
+    final PadHitIndex hitIndex;
+
+    // Per stick: center, travel radius and the SDL axes it drives
+    final float[] stickCenterX = new float[2];
+    final float[] stickCenterY = new float[2];
+    final float[] stickRadius = new float[2];
+    final int[] stickAxisX = {0, 2};
+    final int[] stickAxisY = {1, 3};
+
+    // D-pad ring; a radius of 0 means there is no D-pad
+    float dpadCenterX, dpadCenterY, dpadRadius;
+    DpadSectors dpadSectors;
+
+    PadGeometry(PadHitIndex hitIndex) {
+        this.hitIndex = hitIndex;
+    }
+
+    void setStick(int stick, float left, float top, float width, float height, int axisX, int axisY) {
+        stickCenterX[stick] = left + width / 2f;
+        stickCenterY[stick] = top + height / 2f;
+        stickRadius[stick] = width / 3f;
+        stickAxisX[stick] = axisX;
+        stickAxisY[stick] = axisY;
+    }
+
+    void setDpad(float left, float top, float width, float height,
+                 float diagonalDegrees, float deadzone, float outer) {
+        dpadCenterX = left + width / 2f;
+        dpadCenterY = top + height / 2f;
+        dpadRadius = width / 2f;
+        dpadSectors = new DpadSectors(dpadRadius, diagonalDegrees, deadzone, outer);
+    }
+}
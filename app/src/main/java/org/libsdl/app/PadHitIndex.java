@@ -0,0 +1,113 @@
+package org.libsdl.app;
+
+/**
+ * Hit-test table for the virtual pad. Each target is a rect (in overlay coordinates) and a
+ * code; targets are kept in priority order and bucketed into a coarse grid, so a lookup only
+ * tests the couple of targets overlapping the touched cell. Rebuilt on layout, and lookups
+ * don't allocate.
+ */
+class PadHitIndex {
+    static final int MAX_TARGETS = 32;
+    static final int NONE = -1;
+    private static final int GRID_SIZE = 8;
+
+    private final float[] mLeft = new float[MAX_TARGETS];
+    private final float[] mTop = new float[MAX_TARGETS];
+    private final float[] mRight = new float[MAX_TARGETS];
+    private final float[] mBottom = new float[MAX_TARGETS];
+    private final int[] mCodes = new int[MAX_TARGETS];
+    private int mCount;
+
+    // Bit i of a cell is set if target i overlaps it
+    private final int[] mCells = new int[GRID_SIZE * GRID_SIZE];
+    private float mCellWidth = 1;
+    private float mCellHeight = 1;
+    private float mWidth, mHeight;
+
+    void clear() {
+        mCount = 0;
+        java.util.Arrays.fill(mCells, 0);
+    }
+
+    // Earlier targets win where they overlap later ones
+    void add(float left, float top, float right, float bottom, int code) {
+        if (mCount == MAX_TARGETS) throw new IllegalStateException("Too many hit targets");
+        mLeft[mCount] = left;
+        mTop[mCount] = top;
+        mRight[mCount] = right;
+        mBottom[mCount] = bottom;
+        mCodes[mCount] = code;
+        mCount++;
+    }
+
+    // Call once all targets are added, with the size of the area they live in
+    void build(float width, float height) {
+        java.util.Arrays.fill(mCells, 0);
+        mWidth = width;
+        mHeight = height;
+        mCellWidth = Math.max(1, width / GRID_SIZE);
+        mCellHeight = Math.max(1, height / GRID_SIZE);
+        for (int i = 0; i < mCount; i++) {
+            int c0 = cellX(mLeft[i]), c1 = cellX(mRight[i]);
+            int r0 = cellY(mTop[i]), r1 = cellY(mBottom[i]);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    mCells[r * GRID_SIZE + c] |= 1 << i;
+                }
+            }
+        }
+    }
+
+    // Code of the first target containing (x, y), or NONE
+    int find(float x, float y) {
+        int candidates = mCells[cellY(y) * GRID_SIZE + cellX(x)];
+        while (candidates != 0) {
+            int i = Integer.numberOfTrailingZeros(candidates);
+            if (x >= mLeft[i] && x <= mRight[i] && y >= mTop[i] && y <= mBottom[i]) {
+                return mCodes[i];
+            }
+            candidates &= candidates - 1;
+        }
+        return NONE;
+    }
+
+    int count() {
+        return mCount;
+    }
+
+    float left(int i) {
+        return mLeft[i];
+    }
+
+    float top(int i) {
+        return mTop[i];
+    }
+
+    float right(int i) {
+        return mRight[i];
+    }
+
+    float bottom(int i) {
+        return mBottom[i];
+    }
+
+    int code(int i) {
+        return mCodes[i];
+    }
+
+    float width() {
+        return mWidth;
+    }
+
+    float height() {
+        return mHeight;
+    }
+
+    private int cellX(float x) {
+        return Math.max(0, Math.min(GRID_SIZE - 1, (int) (x / mCellWidth)));
+    }
+
+    private int cellY(float y) {
+        return Math.max(0, Math.min(GRID_SIZE - 1, (int) (y / mCellHeight)));
+    }
+}
@@ -0,0 +1,119 @@
+package org.libsdl.app;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-producer, single-consumer ring of raw pointer samples, stored as parallel primitive
+ * arrays so neither side allocates. The UI thread writes touch samples, the virtual pad input
+ * thread reads them. {@link #KIND_END} closes a sample: everything before it happened at the
+ * time it carries.
+ */
+class PointerSampleRing {
+    static final int KIND_DOWN = 0;
+    static final int KIND_MOVE = 1;
+    static final int KIND_UP = 2;
+    static final int KIND_CANCEL = 3;
+    static final int KIND_END = 4;
+    static final int KIND_RESET = 5; // pointer field carries the device id
+    static final int KIND_GEOMETRY = 6; // the translator should pick up its posted geometry
+    static final int KIND_SETTLE = 7; // never queued: the input thread's own, recorded in traces
+
+    private final int mMask;
+    private final int[] mKinds;
+    private final int[] mPointers;
+    private final float[] mXs;
+    private final float[] mYs;
+    private final long[] mTimes;
+
+    // Next slot to write / read; each is only advanced by its own side
+    private final AtomicLong mHead = new AtomicLong();
+    private final AtomicLong mTail = new AtomicLong();
+
+    // Overflow bookkeeping, only touched by the producer
+    private boolean mOverflowed, mPendingGeometry, mPendingReset;
+    private int mPendingResetDevice, mDropped;
+    private long mLastEndTime;
+
+    // Filled in by poll(), only valid on the consumer thread
+    int kind, pointer;
+    float x, y;
+    long time;
+
+    PointerSampleRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("Capacity must be a power of two");
+        mMask = capacity - 1;
+        mKinds = new int[capacity];
+        mPointers = new int[capacity];
+        mXs = new float[capacity];
+        mYs = new float[capacity];
+        mTimes = new long[capacity];
+    }
+
+    /** Producer side. Returns false if the ring is full. */
+    boolean offer(int kind, int pointer, float x, float y, long time) {
+        long head = mHead.get();
+        if (head - mTail.get() > mMask) return false;
+        int i = (int) head & mMask;
+        mKinds[i] = kind;
+        mPointers[i] = pointer;
+        mXs[i] = x;
+        mYs[i] = y;
+        mTimes[i] = time;
+        mHead.lazySet(head + 1); // Publishes the slot writes above
+        return true;
+    }
+
+    /**
+     * Producer side. Never blocks the UI thread: if the ring is full the sample is dropped.
+     * Once the consumer has made room again every pointer is released (CANCEL, END) before the
+     * next sample goes in, so nothing stays held from the lost ones and fingers still down pick
+     * up from where they are now. A dropped RESET or GEOMETRY is queued again at that point.
+     * Returns false if the sample was dropped.
+     */
+    boolean put(int kind, int pointer, float x, float y, long time) {
+        if (kind == KIND_END) mLastEndTime = time;
+        if ((!mOverflowed || recover()) && offer(kind, pointer, x, y, time)) return true;
+        mOverflowed = true;
+        mDropped++;
+        if (kind == KIND_RESET) {
+            mPendingReset = true;
+            mPendingResetDevice = pointer;
+        } else if (kind == KIND_GEOMETRY) {
+            mPendingGeometry = true;
+        }
+        return false;
+    }
+
+    // Only recovers once the replayed samples, the release and the new sample all fit
+    private boolean recover() {
+        int needed = 3 + (mPendingGeometry ? 1 : 0) + (mPendingReset ? 1 : 0);
+        if (mMask + 1 - (mHead.get() - mTail.get()) < needed) return false;
+        if (mPendingGeometry) offer(KIND_GEOMETRY, 0, 0, 0, 0);
+        if (mPendingReset) offer(KIND_RESET, mPendingResetDevice, 0, 0, 0);
+        offer(KIND_CANCEL, 0, 0, 0, 0);
+        offer(KIND_END, 0, 0, 0, mLastEndTime);
+        mPendingGeometry = false;
+        mPendingReset = false;
+        mOverflowed = false;
+        return true;
+    }
+
+    /** Producer side. How many samples put() has dropped so far. */
+    int dropped() {
+        return mDropped;
+    }
+
+    /** Consumer side. Loads the next sample into the public fields, or returns false if empty. */
+    boolean poll() {
+        long tail = mTail.get();
+        if (tail == mHead.get()) return false;
+        int i = (int) tail & mMask;
+        kind = mKinds[i];
+        pointer = mPointers[i];
+        x = mXs[i];
+        y = mYs[i];
+        time = mTimes[i];
+        mTail.lazySet(tail + 1);
+        return true;
+    }
+}
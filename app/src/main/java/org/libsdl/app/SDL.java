@@ -30,6 +30,7 @@ public class SDL {
     // This function stores the current activity (SDL or not)
     public static void setContext(Context context) {
         SDLAudioManager.setContext(context);
+        SDLControllerManager.setContext(context);
         mContext = context;
     }
 
@@ -30,6 +30,7 @@ import android.provider.DocumentsContract;
 import android.provider.Settings;
 import android.text.Editable;
 import android.text.InputType;
+import android.text.format.DateUtils;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.util.SparseArray;
@@ -60,6 +61,9 @@ import android.widget.Toast;
 import org.ikemen_engine.ikemen_go.R;
 
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.Hashtable;
 import java.util.Locale;
 
@@ -332,6 +336,7 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
     private static final int FOLDER_PICKER_CODE = 42;
     private SharedPreferences mSharedPrefs;
     private static String mBasePath;
+    private static volatile AssetPrefetcher mAssetPrefetcher;
     private Button mSDButton;
     private ControllerOverlay mControllerOverlay;
     private final Runnable hideRunnable = () -> {
@@ -344,6 +349,21 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
         "external/script"
     };
 
+    // Extracts only BOOT_ASSET_DIRS before starting the engine and materializes the rest in the background.
+    // Only enable this with an engine build that calls materializeAsset() before opening content files.
+    private final boolean USE_LAZY_EXTRACTION = false;
+
+    // What the engine needs to reach the title screen: scripts, system files and fonts.
+    private final String[] BOOT_ASSET_DIRS = new String[] {
+        "external",
+        "data",
+        "font"
+    };
+
+    // Resolution of the extraction progress bar, and the throughput below which storage counts as slow
+    private static final int EXTRACTION_PROGRESS_MAX = 1000;
+    private static final long SLOW_STORAGE_BYTES_PER_SEC = 5 * 1024 * 1024;
+
     // Uses folder selection logic if set to true. Set to false for full game scenarios.
     private final boolean USE_FOLDER_SELECT = true;
 
@@ -495,6 +515,21 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
         RelativeLayout.LayoutParams lp = new RelativeLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, FrameLayout.LayoutParams.MATCH_PARENT);
         mLayout.addView(mControllerOverlay, lp);
 
+        // Input latency histograms, shown top-left and in `dumpsys activity`, for debug builds only
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            InputLatency.setEnabled(true);
+            RelativeLayout.LayoutParams latencyParams = new RelativeLayout.LayoutParams(
+                    ViewGroup.LayoutParams.WRAP_CONTENT,
+                    ViewGroup.LayoutParams.WRAP_CONTENT
+            );
+            latencyParams.addRule(RelativeLayout.ALIGN_PARENT_TOP);
+            latencyParams.addRule(RelativeLayout.ALIGN_PARENT_LEFT);
+            InputLatencyView latencyView = new InputLatencyView(this);
+            // Tapping it starts/stops recording a virtual pad input trace to files/input_traces
+            latencyView.setOnClickListener(v -> toggleInputTrace(latencyView));
+            mLayout.addView(latencyView, latencyParams);
+        }
+
 //        setContentView(mLayout); // WHAT IT WAS
         setContentView(rootLayout);
 
@@ -642,6 +677,34 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
     }
 
     private boolean filesNeedUpdate(File baseDir, String[] dirsToCheck) {
+        // A killed extraction can leave any directory half-updated, not just the ones we check
+        if (AssetState.hasUnfinishedRun(baseDir)) {
+            Log.i("AssetExtractor", "Previous extraction was interrupted, resuming");
+            return true;
+        }
+
+        AssetIndex index = AssetExtractor.loadIndex(getAssets());
+        if (index == null) {
+            return filesNeedUpdateByCRC(baseDir, dirsToCheck);
+        }
+
+        // The APK side comes from the build-time index, so only local copies are ever hashed,
+        // and only when their size or mtime changed since we last looked at them.
+        AssetState state = AssetState.load(baseDir);
+        String outdated = state.findOutdated(baseDir, index, dirsToCheck);
+        if (outdated != null) {
+            Log.i("AssetExtractor", "Mismatch detected: " + outdated);
+        }
+        try {
+            state.save();
+        } catch (java.io.IOException e) {
+            Log.w("AssetExtractor", "Could not save asset state", e);
+        }
+        return outdated != null;
+    }
+
+    // Fallback for APKs packaged without manifest.idx: hashes both the APK asset and the local copy
+    private boolean filesNeedUpdateByCRC(File baseDir, String[] dirsToCheck) {
         try {
             // List all files in the APK's directories to check
             for (String checkDir : dirsToCheck) {
@@ -673,6 +736,8 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
 
     private void setupContent() {
         File baseDir = new File(mBasePath);
+        // Only internal storage is ours alone; a picked game folder may be modded file by file
+        AssetStore.setHardLinkRoot(getFilesDir());
 
         // Run the comparison in the background
         new Thread(() -> {
@@ -689,13 +754,20 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
                     ProgressDialog progress = new ProgressDialog(this);
                     progress.setTitle(R.string.updating_files_title);
                     progress.setMessage(getString(R.string.updating_files_msg));
+                    progress.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+                    progress.setIndeterminate(true);
+                    progress.setMax(EXTRACTION_PROGRESS_MAX);
+                    progress.setProgressNumberFormat(null);
                     progress.setCancelable(false);
                     progress.show();
 
                     // Start actual extraction thread
                     new Thread(() -> {
                         try {
-                            AssetExtractor.extractAll(getAssets(), baseDir);
+                            AssetMaterializer deferred = AssetExtractor.sync(getAssets(), baseDir,
+                                    p -> runOnUiThread(() -> showExtractionProgress(progress, p)),
+                                    USE_LAZY_EXTRACTION ? BOOT_ASSET_DIRS : null);
+                            if (deferred != null) deferred.start();
                             runOnUiThread(() -> {
                                 progress.dismiss();
                                 onSDLReady();
@@ -716,6 +788,84 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
         }).start();
     }
 
+    private void showExtractionProgress(ProgressDialog dialog, AssetExtractor.Progress p) {
+        if (p.finished) {
+            Log.i("AssetExtractor", "Extraction on " + Build.MODEL + ": " + p.filesDone + " files, " + p.bytesDone
+                    + " bytes in " + p.elapsedMillis + " ms (" + (p.bytesPerSecond() / 1024) + " KB/s)");
+            if (p.bytesDone > 0 && p.bytesPerSecond() < SLOW_STORAGE_BYTES_PER_SEC) {
+                Log.w("AssetExtractor", "Slow storage detected on " + Build.MODEL);
+            }
+        }
+        if (!dialog.isShowing()) return;
+
+        int done;
+        if (p.bytesTotal > 0) {
+            done = (int) (p.bytesDone * EXTRACTION_PROGRESS_MAX / p.bytesTotal);
+        } else {
+            done = (p.filesTotal > 0) ? p.filesDone * EXTRACTION_PROGRESS_MAX / p.filesTotal : 0;
+        }
+        long eta = p.etaMillis();
+        dialog.setIndeterminate(false);
+        dialog.setProgress(done);
+        dialog.setMessage(getString(R.string.updating_files_progress, getString(R.string.updating_files_msg),
+                p.filesDone, p.filesTotal, p.bytesPerSecond() / (1024f * 1024f),
+                (eta < 0) ? "--:--" : DateUtils.formatElapsedTime(eta / 1000)));
+    }
+
+    /**
+     * This method is called by the engine using JNI before it opens a content file, so that
+     * files deferred by lazy extraction are on disk when they are first needed.
+     */
+    public static boolean materializeAsset(String path) {
+        AssetMaterializer materializer = AssetMaterializer.get();
+        return (materializer == null) || materializer.materialize(path);
+    }
+
+    /**
+     * This method is called by the engine using JNI with the files it expects to load next
+     * (e.g. the fighters and stage on the select screen), to warm them on a background thread.
+     */
+    public static void prefetchAssets(String[] paths) {
+        AssetPrefetcher prefetcher = mAssetPrefetcher;
+        if (prefetcher != null && paths != null) prefetcher.prefetch(paths);
+    }
+
+    /**
+     * This method is called by the engine using JNI to switch the on-screen controller to a
+     * named layout, e.g. one kept per game. Unknown names start from the default layout.
+     */
+    public static void setVirtualPadLayout(final String name) {
+        if (mSingleton == null) return;
+        mSingleton.runOnUiThread(() -> {
+            if (mSingleton.mControllerOverlay != null) mSingleton.mControllerOverlay.setLayout(name);
+        });
+    }
+
+    /**
+     * This method is called by the engine using JNI to let the player move and resize the
+     * on-screen controls. Leaving edit mode saves the layout.
+     */
+    public static void setVirtualPadEditMode(final boolean enabled) {
+        if (mSingleton == null) return;
+        mSingleton.runOnUiThread(() -> {
+            if (mSingleton.mControllerOverlay != null) mSingleton.mControllerOverlay.setEditMode(enabled);
+        });
+    }
+
+    /**
+     * This method is called by the engine using JNI to tune the on-screen D-pad of the current
+     * layout: degrees of the circle per diagonal (cardinals share the rest), and the deadzone
+     * and outer edge as fractions of the D-pad's radius.
+     */
+    public static void setVirtualPadDpadTuning(final float diagonalDegrees, final float deadzone, final float outer) {
+        if (mSingleton == null) return;
+        mSingleton.runOnUiThread(() -> {
+            if (mSingleton.mControllerOverlay != null) {
+                mSingleton.mControllerOverlay.setDpadTuning(diagonalDegrees, deadzone, outer);
+            }
+        });
+    }
+
     private void onSDLReady() {
         // Pass the exact path we just extracted to
         mBasePath = mSharedPrefs.getString(getString(R.string.game_folder_key), "");
@@ -724,6 +874,8 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
         if (mBasePath.isEmpty()) {
             mBasePath = getExternalFilesDir(null).getAbsolutePath();
         }
+        AssetStore store = AssetStore.open(getAssets(), new File(mBasePath));
+        mAssetPrefetcher = new AssetPrefetcher(store, new File(mBasePath));
         SDLActivity.nativeOnSDLReady(mBasePath);
     }
 
@@ -861,6 +1013,38 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
         }
     }
 
+    private void toggleInputTrace(InputLatencyView status) {
+        if (mControllerOverlay.isTracingInput()) {
+            mControllerOverlay.stopInputTrace();
+            status.setStatus(null);
+            return;
+        }
+        File dir = getExternalFilesDir("input_traces");
+        File file = new File(dir, "trace-" + System.currentTimeMillis() + ".bin");
+        try {
+            if (dir == null || (!dir.isDirectory() && !dir.mkdirs())) throw new IOException("No trace directory");
+            mControllerOverlay.startInputTrace(file);
+            status.setStatus("REC " + file.getName());
+        } catch (IOException e) {
+            Log.w(TAG, "Could not start input trace", e);
+        }
+    }
+
+    // `adb shell dumpsys activity <package>` prints the input latency histograms
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        if (InputLatency.isEnabled()) {
+            writer.print(prefix);
+            writer.println("Input latency:");
+            for (String line : InputLatency.dump().split("\n")) {
+                writer.print(prefix);
+                writer.print("  ");
+                writer.println(line);
+            }
+        }
+    }
+
     @Override
     public void onLowMemory() {
         Log.v(TAG, "onLowMemory()");
@@ -1,12 +1,16 @@
 package org.libsdl.app;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
 import android.content.Context;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
 import android.util.Log;
@@ -37,6 +41,8 @@ public class SDLControllerManager
 
     protected static SDLJoystickHandler mJoystickHandler;
     protected static SDLHapticHandler mHapticHandler;
+    protected static InputDeviceTracker mDeviceTracker;
+    protected static ControllerCapabilityCache mCapabilities;
 
     private static final String TAG = "SDLControllerManager";
 
@@ -58,6 +64,150 @@ public class SDLControllerManager
         }
     }
 
+    // Starts tracking input devices the first time there is a context; it runs for the whole process
+    public static void setContext(Context context) {
+        if (context != null && mDeviceTracker == null) {
+            mCapabilities = ControllerCapabilityCache.open(new File(context.getFilesDir(), "controller_caps.bin"),
+                    Build.VERSION.SDK_INT, Build.FINGERPRINT);
+            mDeviceTracker = new InputDeviceTracker(context.getApplicationContext());
+            mDeviceTracker.start();
+        }
+    }
+
+    // Null until there is a context; callers then probe devices themselves
+    static ControllerCapabilityCache getCapabilities() {
+        return mCapabilities;
+    }
+
+    // The descriptor identifies a model across reconnects; devices without one fall back to their name
+    static String getJoystickDescriptor(InputDevice device) {
+        String desc = device.getDescriptor();
+
+        if (desc != null && !desc.isEmpty()) {
+            return desc;
+        }
+
+        return device.getName();
+    }
+
+    /**
+     * Returns the connected input devices, as last seen by the device tracker. Before there is
+     * one this enumerates them on the spot.
+     */
+    static InputDeviceTracker.Snapshot getInputDevices() {
+        InputDeviceTracker tracker = mDeviceTracker;
+        return tracker != null ? tracker.snapshot() : InputDeviceTracker.scan(-1);
+    }
+
+    // Last virtual pad state SDL has seen, so submissions only send what changed
+    private static final VirtualPadState mSubmittedPadState = new VirtualPadState();
+    // Also gets every virtual pad call made, e.g. to record an input trace
+    private static volatile VirtualPadState.Sink mPadCallTap;
+
+    private static final VirtualPadState.Sink mNativePadSink = new VirtualPadState.Sink() {
+        @Override
+        public void padDown(int deviceId, int keycode) {
+            if (onNativePadDown(deviceId, keycode) < 0) {
+                Log.e(TAG, "INPUT FAILURE: Device " + deviceId + " rejected button " + keycode);
+            }
+            VirtualPadState.Sink tap = mPadCallTap;
+            if (tap != null) tap.padDown(deviceId, keycode);
+        }
+
+        @Override
+        public void padUp(int deviceId, int keycode) {
+            onNativePadUp(deviceId, keycode);
+            VirtualPadState.Sink tap = mPadCallTap;
+            if (tap != null) tap.padUp(deviceId, keycode);
+        }
+
+        @Override
+        public void joy(int deviceId, int axis, float value) {
+            onNativeJoy(deviceId, axis, value);
+            VirtualPadState.Sink tap = mPadCallTap;
+            if (tap != null) tap.joy(deviceId, axis, value);
+        }
+
+        @Override
+        public void hat(int deviceId, int hatId, int x, int y) {
+            onNativeHat(deviceId, hatId, x, y);
+            VirtualPadState.Sink tap = mPadCallTap;
+            if (tap != null) tap.hat(deviceId, hatId, x, y);
+        }
+    };
+
+    // Pass null to stop tapping
+    static void setVirtualPadCallTap(VirtualPadState.Sink tap) {
+        mPadCallTap = tap;
+    }
+
+    /**
+     * Sends the virtual pad's state to SDL, making native calls only for the inputs that
+     * changed since the last submission. Called once per touch sample, on the virtual pad's
+     * input thread.
+     *
+     * @return whether anything was sent.
+     */
+    public static boolean submitVirtualPadState(VirtualPadState state) {
+        if (state.submit(mSubmittedPadState, mNativePadSink)) {
+            InputLatency.recordMillis(InputLatency.SOURCE_VIRTUAL_PAD, state.eventTime);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records the state SDL already has for the virtual pad without sending anything, e.g.
+     * right after the device is (re)added and reset to neutral.
+     */
+    public static void resetVirtualPadState(VirtualPadState state) {
+        mSubmittedPadState.copyFrom(state);
+    }
+
+    /**
+     * This method is called by the engine using JNI to set how far a physical joystick axis has
+     * to move, in normalized -1...1 units, before the change is sent to SDL. 0 sends every change.
+     */
+    public static void setJoystickAxisEpsilon(float epsilon) {
+        SDLJoystickHandler_API16.mAxisEpsilon = Math.max(0f, epsilon);
+    }
+
+    // Axis filter settings per device id, falling back to mDefaultAxisFilter; guarded by the registry
+    private static final DeviceRegistry<AxisFilter.Settings> mAxisFilters = new DeviceRegistry<>();
+    private static AxisFilter.Settings mDefaultAxisFilter = AxisFilter.Settings.NONE;
+    // Bumped on every change so input paths only look settings up again when they changed
+    private static volatile int mAxisFilterVersion;
+
+    /**
+     * This method is called by the engine using JNI to configure how a device's axes are
+     * filtered before they reach SDL (see {@link AxisFilter.Settings} for the parameters).
+     * A device id of -1 sets the default for every device without settings of its own.
+     * Axes go through untouched until this is called.
+     */
+    public static void setAxisFilter(int device_id, float deadzone, boolean radial, float curve,
+                                     float step, float minCutoff, float beta) {
+        AxisFilter.Settings settings = new AxisFilter.Settings(deadzone, radial, curve, step, minCutoff, beta);
+        synchronized (mAxisFilters) {
+            if (device_id == -1) {
+                mDefaultAxisFilter = settings;
+            } else {
+                mAxisFilters.put(device_id, settings);
+            }
+            mAxisFilterVersion++;
+        }
+    }
+
+    static AxisFilter.Settings getAxisFilterSettings(int device_id) {
+        synchronized (mAxisFilters) {
+            AxisFilter.Settings settings = mAxisFilters.get(device_id);
+            return settings != null ? settings : mDefaultAxisFilter;
+        }
+    }
+
+    static int getAxisFilterVersion() {
+        return mAxisFilterVersion;
+    }
+
     // Joystick glue code, just a series of stubs that redirect to the SDLJoystickHandler instance
     public static boolean handleJoystickMotionEvent(MotionEvent event) {
         return mJoystickHandler.handleMotionEvent(event);
@@ -150,6 +300,52 @@ class SDLJoystickHandler_API16 extends SDLJoystickHandler {
         public String desc;
         public ArrayList<InputDevice.MotionRange> axes;
         public ArrayList<InputDevice.MotionRange> hats;
+
+        // Flattened from axes/hats at registration so motion events don't go through MotionRange
+        int[] axisIds;
+        float[] axisScale, axisOffset; // value * scale + offset normalizes to -1...1
+        float[] lastAxis; // Last value sent to SDL, NaN before the first
+        int[] hatIds; // X and Y axis id per hat
+        int[] lastHat; // Last x/y sent to SDL, MIN_VALUE before the first
+        AxisFilter filter;
+        float[] filtered; // Scratch for the values being filtered
+        int filterVersion = -1;
+        Runnable settle; // Posted while the filter's output hasn't caught up with the axes
+
+        void cacheRanges() {
+            axisIds = new int[axes.size()];
+            axisScale = new float[axes.size()];
+            axisOffset = new float[axes.size()];
+            lastAxis = new float[axes.size()];
+            for (int i = 0; i < axes.size(); i++) {
+                InputDevice.MotionRange range = axes.get(i);
+                axisIds[i] = range.getAxis();
+                axisScale[i] = range.getRange() > 0 ? 2.0f / range.getRange() : 0;
+                axisOffset[i] = -range.getMin() * axisScale[i] - 1.0f;
+            }
+            Arrays.fill(lastAxis, Float.NaN);
+
+            // Sticks are filtered as pairs when both of their axes are there
+            filter = new AxisFilter(axisIds.length);
+            filtered = new float[axisIds.length];
+            pairAxes(MotionEvent.AXIS_X, MotionEvent.AXIS_Y);
+            pairAxes(MotionEvent.AXIS_Z, MotionEvent.AXIS_RZ);
+            pairAxes(MotionEvent.AXIS_RX, MotionEvent.AXIS_RY);
+
+            hatIds = new int[hats.size() / 2 * 2];
+            lastHat = new int[hatIds.length];
+            for (int i = 0; i < hatIds.length; i++) hatIds[i] = hats.get(i).getAxis();
+            Arrays.fill(lastHat, Integer.MIN_VALUE);
+        }
+
+        private void pairAxes(int axisX, int axisY) {
+            int x = -1, y = -1;
+            for (int i = 0; i < axisIds.length; i++) {
+                if (axisIds[i] == axisX) x = i;
+                if (axisIds[i] == axisY) y = i;
+            }
+            if (x >= 0 && y >= 0) filter.pair(x, y);
+        }
     }
     static class RangeComparator implements Comparator<InputDevice.MotionRange> {
         @Override
@@ -198,85 +394,90 @@ class SDLJoystickHandler_API16 extends SDLJoystickHandler {
         }
     }
 
-    private final ArrayList<SDLJoystick> mJoysticks;
+    // Axis changes smaller than this aren't sent; half a step of SDL's 16 bit axis values by default
+    static volatile float mAxisEpsilon = 0.5f / 32767;
+
+    private final DeviceRegistry<SDLJoystick> mJoysticks;
+    // Runs settle callbacks on the thread motion events arrive on
+    private final Handler mSettleHandler = new Handler(Looper.getMainLooper());
+    // Device snapshot version of the last poll; nothing to do until it changes
+    private int mPolledVersion = -1;
 
     public SDLJoystickHandler_API16() {
 
-        mJoysticks = new ArrayList<SDLJoystick>();
+        mJoysticks = new DeviceRegistry<SDLJoystick>();
     }
 
     @Override
     public void pollInputDevices() {
-        int[] deviceIds = InputDevice.getDeviceIds();
-
-        for (int device_id : deviceIds) {
-            if (SDLControllerManager.isDeviceSDLJoystick(device_id)) {
-                SDLJoystick joystick = getJoystick(device_id);
-                if (joystick == null) {
-                    InputDevice joystickDevice = InputDevice.getDevice(device_id);
-                    joystick = new SDLJoystick();
-                    joystick.device_id = device_id;
-                    joystick.name = joystickDevice.getName();
-                    joystick.desc = getJoystickDescriptor(joystickDevice);
-                    joystick.axes = new ArrayList<InputDevice.MotionRange>();
-                    joystick.hats = new ArrayList<InputDevice.MotionRange>();
-
-                    List<InputDevice.MotionRange> ranges = joystickDevice.getMotionRanges();
-                    Collections.sort(ranges, new RangeComparator());
-                    for (InputDevice.MotionRange range : ranges) {
-                        if ((range.getSource() & InputDevice.SOURCE_CLASS_JOYSTICK) != 0) {
-                            if (range.getAxis() == MotionEvent.AXIS_HAT_X || range.getAxis() == MotionEvent.AXIS_HAT_Y) {
-                                joystick.hats.add(range);
-                            } else {
-                                joystick.axes.add(range);
-                            }
+        InputDeviceTracker.Snapshot devices = SDLControllerManager.getInputDevices();
+        if (devices.version >= 0 && devices.version == mPolledVersion) return;
+        mPolledVersion = devices.version;
+
+        mJoysticks.beginMark();
+        for (int device_id : devices.deviceIds) {
+            mJoysticks.mark(device_id);
+        }
+        for (int device_id : devices.joystickIds) {
+            SDLJoystick joystick = getJoystick(device_id);
+            if (joystick == null) {
+                InputDevice joystickDevice = InputDevice.getDevice(device_id);
+                if (joystickDevice == null) continue; // Gone since the snapshot; its removal bumps the version
+                joystick = new SDLJoystick();
+                joystick.device_id = device_id;
+                joystick.name = joystickDevice.getName();
+                joystick.desc = getJoystickDescriptor(joystickDevice);
+                joystick.axes = new ArrayList<InputDevice.MotionRange>();
+                joystick.hats = new ArrayList<InputDevice.MotionRange>();
+
+                List<InputDevice.MotionRange> ranges = joystickDevice.getMotionRanges();
+                Collections.sort(ranges, new RangeComparator());
+                for (InputDevice.MotionRange range : ranges) {
+                    if ((range.getSource() & InputDevice.SOURCE_CLASS_JOYSTICK) != 0) {
+                        if (range.getAxis() == MotionEvent.AXIS_HAT_X || range.getAxis() == MotionEvent.AXIS_HAT_Y) {
+                            joystick.hats.add(range);
+                        } else {
+                            joystick.axes.add(range);
                         }
                     }
-
-                    mJoysticks.add(joystick);
-                    SDLControllerManager.nativeAddJoystick(joystick.device_id, joystick.name, joystick.desc,
-                            getVendorId(joystickDevice), getProductId(joystickDevice), false,
-                            getButtonMask(joystickDevice), joystick.axes.size(), getAxisMask(joystick.axes), joystick.hats.size()/2, 0);
                 }
-            }
-        }
 
-        /* Check removed devices */
-        ArrayList<Integer> removedDevices = null;
-        for (SDLJoystick joystick : mJoysticks) {
-            int device_id = joystick.device_id;
-            int i;
-            for (i = 0; i < deviceIds.length; i++) {
-                if (device_id == deviceIds[i]) break;
-            }
-            if (i == deviceIds.length) {
-                if (removedDevices == null) {
-                    removedDevices = new ArrayList<Integer>();
+                joystick.cacheRanges();
+                final SDLJoystick added = joystick;
+                joystick.settle = () -> settle(added);
+                mJoysticks.put(device_id, joystick);
+
+                // Known models skip the hasKeys probe
+                int buttonMask, axisMask, hatCount;
+                ControllerCapabilityCache caps = SDLControllerManager.getCapabilities();
+                String key = caps != null ? ControllerCapabilityCache.key(joystickDevice) : null;
+                ControllerCapabilityCache.Entry cached = caps != null ? caps.get(key) : null;
+                if (cached != null && cached.has(ControllerCapabilityCache.Entry.HAS_MASKS)) {
+                    buttonMask = cached.buttonMask;
+                    axisMask = cached.axisMask;
+                    hatCount = cached.hatCount;
+                } else {
+                    buttonMask = getButtonMask(joystickDevice);
+                    axisMask = getAxisMask(joystick.axes);
+                    hatCount = joystick.hats.size() / 2;
+                    if (caps != null) caps.putMasks(key, buttonMask, axisMask, hatCount);
                 }
-                removedDevices.add(device_id);
+                SDLControllerManager.nativeAddJoystick(joystick.device_id, joystick.name, joystick.desc,
+                        getVendorId(joystickDevice), getProductId(joystickDevice), false,
+                        buttonMask, joystick.axes.size(), axisMask, hatCount, 0);
             }
         }
 
-        if (removedDevices != null) {
-            for (int device_id : removedDevices) {
-                SDLControllerManager.nativeRemoveJoystick(device_id);
-                for (int i = 0; i < mJoysticks.size(); i++) {
-                    if (mJoysticks.get(i).device_id == device_id) {
-                        mJoysticks.remove(i);
-                        break;
-                    }
-                }
-            }
+        /* Check removed devices */
+        for (int device_id : mJoysticks.unmarked()) {
+            SDLControllerManager.nativeRemoveJoystick(device_id);
+            SDLJoystick removed = mJoysticks.remove(device_id);
+            if (removed != null) mSettleHandler.removeCallbacks(removed.settle);
         }
     }
 
     protected SDLJoystick getJoystick(int device_id) {
-        for (SDLJoystick joystick : mJoysticks) {
-            if (joystick.device_id == device_id) {
-                return joystick;
-            }
-        }
-        return null;
+        return mJoysticks.get(device_id);
     }
 
     @Override
@@ -286,30 +487,66 @@ class SDLJoystickHandler_API16 extends SDLJoystickHandler {
         if (action == MotionEvent.ACTION_MOVE) {
             SDLJoystick joystick = getJoystick(event.getDeviceId());
             if (joystick != null) {
-                for (int i = 0; i < joystick.axes.size(); i++) {
-                    InputDevice.MotionRange range = joystick.axes.get(i);
+                // Only what moved since the last event goes to SDL
+                float[] values = joystick.filtered;
+                for (int i = 0; i < values.length; i++) {
                     /* Normalize the value to -1...1 */
-                    float value = (event.getAxisValue(range.getAxis(), actionPointerIndex) - range.getMin()) / range.getRange() * 2.0f - 1.0f;
-                    SDLControllerManager.onNativeJoy(joystick.device_id, i, value);
+                    values[i] = event.getAxisValue(joystick.axisIds[i], actionPointerIndex) * joystick.axisScale[i] + joystick.axisOffset[i];
+                }
+                int filterVersion = SDLControllerManager.getAxisFilterVersion();
+                if (filterVersion != joystick.filterVersion) {
+                    joystick.filterVersion = filterVersion;
+                    joystick.filter.setSettings(SDLControllerManager.getAxisFilterSettings(joystick.device_id));
                 }
-                for (int i = 0; i < joystick.hats.size() / 2; i++) {
-                    int hatX = Math.round(event.getAxisValue(joystick.hats.get(2 * i).getAxis(), actionPointerIndex));
-                    int hatY = Math.round(event.getAxisValue(joystick.hats.get(2 * i + 1).getAxis(), actionPointerIndex));
-                    SDLControllerManager.onNativeHat(joystick.device_id, i, hatX, hatY);
+                joystick.filter.filter(values, event.getEventTime());
+                boolean sent = sendAxes(joystick, values, mAxisEpsilon);
+                // Once the stick stops moving, settle the filter onto where it really is
+                mSettleHandler.removeCallbacks(joystick.settle);
+                if (!joystick.filter.isSettled()) {
+                    mSettleHandler.postDelayed(joystick.settle, AxisFilter.SETTLE_MILLIS);
+                }
+                int[] lastHat = joystick.lastHat;
+                for (int i = 0; i < lastHat.length; i += 2) {
+                    int hatX = Math.round(event.getAxisValue(joystick.hatIds[i], actionPointerIndex));
+                    int hatY = Math.round(event.getAxisValue(joystick.hatIds[i + 1], actionPointerIndex));
+                    if (hatX != lastHat[i] || hatY != lastHat[i + 1]) {
+                        lastHat[i] = hatX;
+                        lastHat[i + 1] = hatY;
+                        SDLControllerManager.onNativeHat(joystick.device_id, i / 2, hatX, hatY);
+                        sent = true;
+                    }
                 }
+                if (sent) InputLatency.record(InputLatency.SOURCE_JOYSTICK, event);
             }
         }
         return true;
     }
 
-    public String getJoystickDescriptor(InputDevice joystickDevice) {
-        String desc = joystickDevice.getDescriptor();
-
-        if (desc != null && !desc.isEmpty()) {
-            return desc;
+    private static boolean sendAxes(SDLJoystick joystick, float[] values, float epsilon) {
+        boolean sent = false;
+        float[] lastAxis = joystick.lastAxis;
+        for (int i = 0; i < lastAxis.length; i++) {
+            float value = values[i];
+            // Centered and fully deflected always get through so the filter can't leave an axis just short
+            if (Math.abs(value - lastAxis[i]) > epsilon || Float.isNaN(lastAxis[i])
+                    || (value != lastAxis[i] && (value == 0.0f || Math.abs(value) == 1.0f))) {
+                lastAxis[i] = value;
+                SDLControllerManager.onNativeJoy(joystick.device_id, i, value);
+                sent = true;
+            }
         }
+        return sent;
+    }
 
-        return joystickDevice.getName();
+    // No event came for a while: whatever the filter settles on is final, so send any change
+    private void settle(SDLJoystick joystick) {
+        if (getJoystick(joystick.device_id) != joystick) return;
+        joystick.filter.settle(joystick.filtered);
+        sendAxes(joystick, joystick.filtered, 0f);
+    }
+
+    public String getJoystickDescriptor(InputDevice joystickDevice) {
+        return SDLControllerManager.getJoystickDescriptor(joystickDevice);
     }
     public int getProductId(InputDevice joystickDevice) {
         return 0;
@@ -510,10 +747,12 @@ class SDLHapticHandler {
         public Vibrator vib;
     }
 
-    private final ArrayList<SDLHaptic> mHaptics;
+    private final DeviceRegistry<SDLHaptic> mHaptics;
+    // Device snapshot version of the last poll; nothing to do until it changes
+    private int mPolledVersion = -1;
 
     public SDLHapticHandler() {
-        mHaptics = new ArrayList<SDLHaptic>();
+        mHaptics = new DeviceRegistry<SDLHaptic>();
     }
 
     public void run(int device_id, float intensity, int length) {
@@ -535,16 +774,23 @@ class SDLHapticHandler {
         final int deviceId_VIBRATOR_SERVICE = 999999;
         boolean hasVibratorService = false;
 
-        int[] deviceIds = InputDevice.getDeviceIds();
+        InputDeviceTracker.Snapshot devices = SDLControllerManager.getInputDevices();
+        if (devices.version >= 0 && devices.version == mPolledVersion) return;
+        mPolledVersion = devices.version;
+
+        int[] deviceIds = devices.deviceIds;
         // It helps processing the device ids in reverse order
         // For example, in the case of the XBox 360 wireless dongle,
         // so the first controller seen by SDL matches what the receiver
         // considers to be the first controller
 
+        mHaptics.beginMark();
         for (int i = deviceIds.length - 1; i > -1; i--) {
+            mHaptics.mark(deviceIds[i]);
             SDLHaptic haptic = getHaptic(deviceIds[i]);
             if (haptic == null) {
                 InputDevice device = InputDevice.getDevice(deviceIds[i]);
+                if (device == null) continue; // Gone since the snapshot
                 Vibrator vib = device.getVibrator();
                 if (vib != null) {
                     if (vib.hasVibrator()) {
@@ -552,7 +798,7 @@ class SDLHapticHandler {
                         haptic.device_id = deviceIds[i];
                         haptic.name = device.getName();
                         haptic.vib = vib;
-                        mHaptics.add(haptic);
+                        mHaptics.put(haptic.device_id, haptic);
                         SDLControllerManager.nativeAddHaptic(haptic.device_id, haptic.name);
                     }
                 }
@@ -565,57 +811,29 @@ class SDLHapticHandler {
             hasVibratorService = vib.hasVibrator();
 
             if (hasVibratorService) {
+                // Don't remove the vibrator while it is still present
+                mHaptics.mark(deviceId_VIBRATOR_SERVICE);
                 SDLHaptic haptic = getHaptic(deviceId_VIBRATOR_SERVICE);
                 if (haptic == null) {
                     haptic = new SDLHaptic();
                     haptic.device_id = deviceId_VIBRATOR_SERVICE;
                     haptic.name = "VIBRATOR_SERVICE";
                     haptic.vib = vib;
-                    mHaptics.add(haptic);
+                    mHaptics.put(haptic.device_id, haptic);
                     SDLControllerManager.nativeAddHaptic(haptic.device_id, haptic.name);
                 }
             }
         }
 
         /* Check removed devices */
-        ArrayList<Integer> removedDevices = null;
-        for (SDLHaptic haptic : mHaptics) {
-            int device_id = haptic.device_id;
-            int i;
-            for (i = 0; i < deviceIds.length; i++) {
-                if (device_id == deviceIds[i]) break;
-            }
-
-            if (device_id != deviceId_VIBRATOR_SERVICE || !hasVibratorService) {
-                if (i == deviceIds.length) {
-                    if (removedDevices == null) {
-                        removedDevices = new ArrayList<Integer>();
-                    }
-                    removedDevices.add(device_id);
-                }
-            }  // else: don't remove the vibrator if it is still present
-        }
-
-        if (removedDevices != null) {
-            for (int device_id : removedDevices) {
-                SDLControllerManager.nativeRemoveHaptic(device_id);
-                for (int i = 0; i < mHaptics.size(); i++) {
-                    if (mHaptics.get(i).device_id == device_id) {
-                        mHaptics.remove(i);
-                        break;
-                    }
-                }
-            }
+        for (int device_id : mHaptics.unmarked()) {
+            SDLControllerManager.nativeRemoveHaptic(device_id);
+            mHaptics.remove(device_id);
         }
     }
 
     protected SDLHaptic getHaptic(int device_id) {
-        for (SDLHaptic haptic : mHaptics) {
-            if (haptic.device_id == device_id) {
-                return haptic;
-            }
-        }
-        return null;
+        return mHaptics.get(device_id);
     }
 }
 
@@ -295,6 +295,7 @@ public class SDLSurface extends SurfaceView implements SurfaceHolder.Callback,
             }
         }
 
+        InputLatency.record(InputLatency.SOURCE_TOUCH, event);
         return true;
    }
 
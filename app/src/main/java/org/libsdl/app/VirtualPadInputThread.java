@@ -0,0 +1,146 @@
+package org.libsdl.app;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drains a {@link PointerSampleRing} into a {@link VirtualPadTranslator} at display priority,
+ * so virtual pad input reaches SDL without waiting behind layout, drawing or other UI thread
+ * work. Parks while the ring is empty; the producer wakes it with {@link #wake()}. If the sticks'
+ * filter is still catching up when input stops, it wakes up once more to settle them.
+ */
+class VirtualPadInputThread extends Thread {
+    private static final String TAG = "VirtualPadInput";
+
+    private final PointerSampleRing mRing;
+    private final VirtualPadTranslator mTranslator;
+    private volatile boolean mRunning = true;
+
+    // Trace to record into; it begins at the first sample boundary with the pad neutral
+    private volatile InputTraceWriter mTrace;
+    private boolean mAtBoundary = true;
+    // Uptime of the last sample boundary, for settling the sticks once input stops
+    private long mLastSampleTime;
+    // Filter settings version the translator's sticks were last configured from
+    private int mFilterVersion = -1;
+
+    VirtualPadInputThread(PointerSampleRing ring, VirtualPadTranslator translator) {
+        super("VirtualPadInput");
+        mRing = ring;
+        mTranslator = translator;
+        setDaemon(true);
+    }
+
+    void wake() {
+        LockSupport.unpark(this);
+    }
+
+    void quit() {
+        mRunning = false;
+        wake();
+    }
+
+    void setTrace(InputTraceWriter trace) {
+        mTrace = trace;
+        wake();
+    }
+
+    private void maybeBeginTrace() {
+        InputTraceWriter trace = mTrace;
+        if (trace != null && mAtBoundary && mTranslator.isIdle() && !trace.isStarted()) {
+            trace.begin(mTranslator.getDeviceId(), mTranslator.getGeometry(), mTranslator.getStickFilter());
+        }
+    }
+
+    // Picks up filter settings changed since the last sample, or for a new device after a reset
+    private void updateStickFilter(InputTraceWriter trace) {
+        int version = SDLControllerManager.getAxisFilterVersion();
+        if (version == mFilterVersion) return;
+        mFilterVersion = version;
+        AxisFilter.Settings settings = SDLControllerManager.getAxisFilterSettings(mTranslator.getDeviceId());
+        mTranslator.setStickFilter(settings);
+        if (trace != null) trace.filter(settings);
+    }
+
+    private void settle() {
+        long now = SystemClock.uptimeMillis();
+        InputTraceWriter trace = mTrace;
+        if (trace != null) trace.sample(PointerSampleRing.KIND_SETTLE, 0, 0, 0, now);
+        mTranslator.settle(now);
+    }
+
+    @Override
+    public void run() {
+        try {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_DISPLAY);
+        } catch (Exception e) {
+            // Some builds don't let apps go that high
+            try {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+            } catch (Exception e2) {
+                Log.w(TAG, "Could not raise input thread priority", e2);
+            }
+        }
+
+        PointerSampleRing ring = mRing;
+        while (mRunning) {
+            if (!ring.poll()) {
+                maybeBeginTrace();
+                if (!mAtBoundary || mTranslator.isSettled()) {
+                    LockSupport.park(this);
+                } else {
+                    long wait = mLastSampleTime + AxisFilter.SETTLE_MILLIS - SystemClock.uptimeMillis();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(this, wait * 1000000L);
+                    } else {
+                        settle();
+                    }
+                }
+                continue;
+            }
+
+            InputTraceWriter trace = mTrace;
+            updateStickFilter(trace);
+            if (trace != null && ring.kind < PointerSampleRing.KIND_RESET) {
+                trace.sample(ring.kind, ring.pointer, ring.x, ring.y, ring.time);
+            }
+            if (ring.kind < PointerSampleRing.KIND_END) {
+                mAtBoundary = false;
+            } else if (ring.kind == PointerSampleRing.KIND_END) {
+                mAtBoundary = true;
+            }
+
+            switch (ring.kind) {
+                case PointerSampleRing.KIND_DOWN:
+                    mTranslator.pointerDown(ring.pointer, ring.x, ring.y);
+                    break;
+                case PointerSampleRing.KIND_MOVE:
+                    mTranslator.pointerMove(ring.pointer, ring.x, ring.y);
+                    break;
+                case PointerSampleRing.KIND_UP:
+                    mTranslator.pointerUp(ring.pointer);
+                    break;
+                case PointerSampleRing.KIND_CANCEL:
+                    mTranslator.cancel();
+                    break;
+                case PointerSampleRing.KIND_END:
+                    mTranslator.endSample(ring.time);
+                    mLastSampleTime = SystemClock.uptimeMillis();
+                    maybeBeginTrace();
+                    break;
+                case PointerSampleRing.KIND_RESET:
+                    if (trace != null) trace.reset(ring.pointer);
+                    mTranslator.reset(ring.pointer);
+                    mFilterVersion = -1;
+                    break;
+                case PointerSampleRing.KIND_GEOMETRY:
+                    mTranslator.applyPostedGeometry();
+                    if (trace != null) trace.geometry(mTranslator.getGeometry());
+                    break;
+            }
+        }
+    }
+}
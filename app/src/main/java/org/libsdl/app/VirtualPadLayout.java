@@ -0,0 +1,168 @@
+package org.libsdl.app;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Where the on-screen controls sit and what they send: one element per button, D-pad or stick,
+ * in hit-test priority order. Positions are the element's center as a fraction of the overlay's
+ * width/height, sizes a fraction of its shorter side, so one layout fits any screen.
+ *
+ * Layouts are stored in a small binary format: magic, version, the D-pad tuning, element
+ * count, then per element its kind, codes, center, size and label. Version 1 files had no
+ * tuning and load with the defaults.
+ */
+class VirtualPadLayout {
+    static final int MAGIC = 0x494B5650; // "IKVP"
+    static final int VERSION = 2;
+    static final int MAX_ELEMENTS = 32;
+
+    static final int KIND_BUTTON = 0;
+    static final int KIND_DPAD = 1;
+    static final int KIND_STICK = 2;
+
+    static class Element {
+        int kind;
+        // Buttons: keycode, or 4000 + axis for triggers. Sticks: X and Y axes. D-pad: unused
+        int code, code2;
+        float x, y, width, height;
+        String label;
+
+        Element(int kind, int code, int code2, float x, float y, float width, float height, String label) {
+            this.kind = kind;
+            this.code = code;
+            this.code2 = code2;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.label = label;
+        }
+
+        Element(Element other) {
+            this(other.kind, other.code, other.code2, other.x, other.y, other.width, other.height, other.label);
+        }
+    }
+
+    final List<Element> elements = new ArrayList<>();
+
+    // How the D-pad splits into directions, see DpadSectors
+    float dpadDiagonalDegrees = DpadSectors.DEFAULT_DIAGONAL_DEGREES;
+    float dpadDeadzone = DpadSectors.DEFAULT_DEADZONE;
+    float dpadOuter = DpadSectors.DEFAULT_OUTER;
+
+    VirtualPadLayout() {
+    }
+
+    VirtualPadLayout(VirtualPadLayout other) {
+        for (Element e : other.elements) elements.add(new Element(e));
+        dpadDiagonalDegrees = other.dpadDiagonalDegrees;
+        dpadDeadzone = other.dpadDeadzone;
+        dpadOuter = other.dpadOuter;
+    }
+
+    void add(Element e) {
+        if (elements.size() == MAX_ELEMENTS) throw new IllegalStateException("Too many pad elements");
+        if (!isSupported(e.kind, e.code, e.code2)) {
+            throw new IllegalArgumentException("Unsupported codes " + e.code + ", " + e.code2 + " for pad element kind " + e.kind);
+        }
+        elements.add(e);
+    }
+
+    // Buttons must be gamepad keycodes the pad state can hold, or triggers on one of SDL's axes
+    static boolean isSupported(int kind, int code, int code2) {
+        switch (kind) {
+            case KIND_BUTTON:
+                return VirtualPadState.buttonBit(code) != 0
+                        || (code >= 4000 && code < 4000 + VirtualPadState.AXIS_COUNT);
+            case KIND_STICK:
+                return code >= 0 && code < VirtualPadState.AXIS_COUNT && code2 >= 0 && code2 < VirtualPadState.AXIS_COUNT;
+            case KIND_DPAD:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeFloat(dpadDiagonalDegrees);
+        out.writeFloat(dpadDeadzone);
+        out.writeFloat(dpadOuter);
+        out.writeByte(elements.size());
+        for (Element e : elements) {
+            out.writeByte(e.kind);
+            out.writeInt(e.code);
+            out.writeInt(e.code2);
+            out.writeFloat(e.x);
+            out.writeFloat(e.y);
+            out.writeFloat(e.width);
+            out.writeFloat(e.height);
+            out.writeUTF(e.label != null ? e.label : "");
+        }
+    }
+
+    static VirtualPadLayout read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not a pad layout");
+        int version = in.readUnsignedShort();
+        if (version < 1 || version > VERSION) throw new IOException("Unsupported pad layout version " + version);
+
+        VirtualPadLayout layout = new VirtualPadLayout();
+        if (version >= 2) {
+            layout.dpadDiagonalDegrees = in.readFloat();
+            layout.dpadDeadzone = in.readFloat();
+            layout.dpadOuter = in.readFloat();
+        }
+        int count = in.readUnsignedByte();
+        if (count > MAX_ELEMENTS) throw new IOException("Too many pad elements: " + count);
+        for (int i = 0; i < count; i++) {
+            int kind = in.readUnsignedByte();
+            if (kind > KIND_STICK) throw new IOException("Unknown pad element kind " + kind);
+            int code = in.readInt();
+            int code2 = in.readInt();
+            float x = in.readFloat();
+            float y = in.readFloat();
+            float width = in.readFloat();
+            float height = in.readFloat();
+            String label = in.readUTF();
+            if (!isSupported(kind, code, code2)) {
+                throw new IOException("Unsupported codes " + code + ", " + code2 + " for pad element kind " + kind);
+            }
+            layout.add(new Element(kind, code, code2, x, y, width, height, label.isEmpty() ? null : label));
+        }
+        return layout;
+    }
+
+    /** Returns the layout stored in file, or null if there is none. */
+    static VirtualPadLayout load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return read(in);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    void save(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            write(out);
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + file.getAbsolutePath());
+        }
+    }
+}
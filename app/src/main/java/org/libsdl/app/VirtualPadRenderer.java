@@ -0,0 +1,178 @@
+package org.libsdl.app;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RenderNode;
+import android.os.Build;
+
+/**
+ * Draws the whole virtual pad in one pass from a flat list of primitives (buttons, D-pad and
+ * sticks), so the overlay doesn't need a view per button. On Android 10+ every primitive gets
+ * its own RenderNode: a press or stick move only re-records that primitive, and the rest of
+ * the frame just replays the cached display lists.
+ */
+class VirtualPadRenderer {
+    static final int SHAPE_BUTTON = 0;
+    static final int SHAPE_DPAD_BASE = 1;
+    static final int SHAPE_DPAD_ARROW = 2;
+    static final int SHAPE_STICK = 3;
+
+    // Enough for a layout that is all D-pads, the element needing the most (a base and four arrows)
+    static final int PRIMITIVES_PER_DPAD = 5;
+    private static final int MAX_PRIMITIVES = VirtualPadLayout.MAX_ELEMENTS * PRIMITIVES_PER_DPAD;
+
+    // Same colors as the round_button selector and the old JoystickOverlay drawing
+    private static final int BUTTON_COLOR = 0x88888888;
+    private static final int BUTTON_PRESSED_COLOR = 0x88444444;
+    private static final int OUTLINE_COLOR = 0x88FFFFFF;
+    private static final int DPAD_BASE_COLOR = 0x88FFFFFF;
+    private static final int STICK_BASE_COLOR = 0x44FFFFFF;
+    private static final int STICK_KNOB_COLOR = 0x88FFFFFF;
+
+    private final boolean mUseRenderNodes = Build.VERSION.SDK_INT >= 29 /* Android 10 (Q) */;
+
+    private final int[] mShapes = new int[MAX_PRIMITIVES];
+    private final int[] mLeft = new int[MAX_PRIMITIVES];
+    private final int[] mTop = new int[MAX_PRIMITIVES];
+    private final int[] mRight = new int[MAX_PRIMITIVES];
+    private final int[] mBottom = new int[MAX_PRIMITIVES];
+    private final CharSequence[] mLabels = new CharSequence[MAX_PRIMITIVES];
+    private final float[] mTextSizes = new float[MAX_PRIMITIVES];
+    private final int[] mTextColors = new int[MAX_PRIMITIVES];
+    private final float[] mAlphas = new float[MAX_PRIMITIVES];
+    private final boolean[] mPressed = new boolean[MAX_PRIMITIVES];
+    private final float[] mKnobX = new float[MAX_PRIMITIVES];
+    private final float[] mKnobY = new float[MAX_PRIMITIVES];
+    private final boolean[] mDirty = new boolean[MAX_PRIMITIVES];
+    private final RenderNode[] mNodes = new RenderNode[MAX_PRIMITIVES];
+    private int mCount;
+
+    private final Paint mFillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mStrokePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint.FontMetrics mFontMetrics = new Paint.FontMetrics();
+
+    VirtualPadRenderer(float density) {
+        mStrokePaint.setStyle(Paint.Style.STROKE);
+        mStrokePaint.setStrokeWidth(2 * density);
+        mTextPaint.setTextAlign(Paint.Align.CENTER);
+    }
+
+    void clear() {
+        for (int i = 0; i < mCount; i++) {
+            mLabels[i] = null;
+            if (mNodes[i] != null) mNodes[i].discardDisplayList();
+        }
+        mCount = 0;
+    }
+
+    /** Adds a primitive, drawn after (on top of) the ones added before it. Returns its index. */
+    int add(int shape, int left, int top, int right, int bottom,
+            CharSequence label, float textSize, int textColor, float alpha) {
+        if (mCount == MAX_PRIMITIVES) throw new IllegalStateException("Too many pad primitives");
+        int i = mCount++;
+        mShapes[i] = shape;
+        mLeft[i] = left;
+        mTop[i] = top;
+        mRight[i] = right;
+        mBottom[i] = bottom;
+        mLabels[i] = label;
+        mTextSizes[i] = textSize;
+        mTextColors[i] = textColor;
+        mAlphas[i] = alpha;
+        mPressed[i] = false;
+        mKnobX[i] = 0;
+        mKnobY[i] = 0;
+        mDirty[i] = true;
+        if (mUseRenderNodes && mNodes[i] == null) mNodes[i] = new RenderNode("VirtualPad");
+        return i;
+    }
+
+    // Returns whether the primitive needs redrawing
+    boolean setPressed(int i, boolean pressed) {
+        if (i < 0 || i >= mCount || mPressed[i] == pressed) return false;
+        mPressed[i] = pressed;
+        mDirty[i] = true;
+        return true;
+    }
+
+    // Stick knob offset from center, -1..1 on each axis; returns whether it needs redrawing
+    boolean setKnob(int i, float x, float y) {
+        if (i < 0 || i >= mCount || (mKnobX[i] == x && mKnobY[i] == y)) return false;
+        mKnobX[i] = x;
+        mKnobY[i] = y;
+        mDirty[i] = true;
+        return true;
+    }
+
+    void draw(Canvas canvas) {
+        boolean useNodes = mUseRenderNodes && canvas.isHardwareAccelerated();
+        for (int i = 0; i < mCount; i++) {
+            int width = mRight[i] - mLeft[i];
+            int height = mBottom[i] - mTop[i];
+            if (useNodes) {
+                RenderNode node = mNodes[i];
+                if (mDirty[i] || !node.hasDisplayList()) {
+                    node.setPosition(mLeft[i], mTop[i], mRight[i], mBottom[i]);
+                    Canvas c = node.beginRecording(width, height);
+                    drawPrimitive(c, i, width, height);
+                    node.endRecording();
+                    mDirty[i] = false;
+                }
+                canvas.drawRenderNode(node);
+            } else {
+                canvas.save();
+                canvas.translate(mLeft[i], mTop[i]);
+                drawPrimitive(canvas, i, width, height);
+                canvas.restore();
+                mDirty[i] = false;
+            }
+        }
+    }
+
+    // Draws primitive i with its top-left corner at the canvas origin
+    private void drawPrimitive(Canvas canvas, int i, int width, int height) {
+        float cx = width / 2f;
+        float cy = height / 2f;
+        switch (mShapes[i]) {
+            case SHAPE_BUTTON: {
+                float r = Math.min(width, height) / 2f - mStrokePaint.getStrokeWidth() / 2f;
+                mFillPaint.setColor(mPressed[i] ? BUTTON_PRESSED_COLOR : BUTTON_COLOR);
+                canvas.drawCircle(cx, cy, r, mFillPaint);
+                mStrokePaint.setColor(OUTLINE_COLOR);
+                canvas.drawCircle(cx, cy, r, mStrokePaint);
+                drawLabel(canvas, i, cx, cy, mAlphas[i]);
+                break;
+            }
+            case SHAPE_DPAD_BASE: {
+                mFillPaint.setColor(DPAD_BASE_COLOR);
+                canvas.drawCircle(cx, cy, Math.min(width, height) / 2f, mFillPaint);
+                break;
+            }
+            case SHAPE_DPAD_ARROW:
+                // Arrows have no background; a held direction shows at full opacity
+                drawLabel(canvas, i, cx, cy, mPressed[i] ? 1f : mAlphas[i]);
+                break;
+            case SHAPE_STICK: {
+                float radius = Math.min(width, height) / 3.0f;
+                mFillPaint.setColor(STICK_BASE_COLOR);
+                canvas.drawCircle(cx, cy, radius, mFillPaint);
+                mFillPaint.setColor(STICK_KNOB_COLOR);
+                canvas.drawCircle(cx + mKnobX[i] * radius, cy + mKnobY[i] * radius, radius / 2.0f, mFillPaint);
+                break;
+            }
+        }
+    }
+
+    private void drawLabel(Canvas canvas, int i, float cx, float cy, float alpha) {
+        CharSequence label = mLabels[i];
+        if (label == null || label.length() == 0) return;
+        mTextPaint.setTextSize(mTextSizes[i]);
+        mTextPaint.setColor(mTextColors[i]);
+        mTextPaint.setAlpha((int) (Color.alpha(mTextColors[i]) * alpha));
+        mTextPaint.getFontMetrics(mFontMetrics);
+        float baseline = cy - (mFontMetrics.ascent + mFontMetrics.descent) / 2f;
+        canvas.drawText(label, 0, label.length(), cx, baseline, mTextPaint);
+    }
+}
@@ -0,0 +1,112 @@
+package org.libsdl.app;
+
+/**
+ * Snapshot of everything the virtual pad reports: held buttons as a bitmask, the hat and the
+ * six axes. The overlay edits one of these while handling a touch event and submits it once
+ * at the end; {@link #submit} diffs it against the last submitted snapshot so only the
+ * inputs that actually changed cross into native code.
+ */
+class VirtualPadState {
+    static final int AXIS_COUNT = 6;
+
+    // Keycodes the pad can hold, every gamepad button Android has; bit i of the button mask is
+    // BUTTON_CODES[i]
+    static final int[] BUTTON_CODES = new int[31];
+    static {
+        for (int i = 0; i < 15; i++) BUTTON_CODES[i] = 96 + i;       // BUTTON_A ... BUTTON_MODE
+        for (int i = 0; i < 16; i++) BUTTON_CODES[15 + i] = 188 + i; // BUTTON_1 ... BUTTON_16
+    }
+
+    /** Where submitted changes go; SDLControllerManager forwards them to SDL. */
+    interface Sink {
+        void padDown(int deviceId, int keycode);
+        void padUp(int deviceId, int keycode);
+        void joy(int deviceId, int axis, float value);
+        void hat(int deviceId, int hatId, int x, int y);
+    }
+
+    int deviceId = -1;
+    int buttons;
+    int hatX, hatY;
+    final float[] axes = new float[AXIS_COUNT];
+    // MotionEvent time (uptime millis) of the sample this state reflects; not part of the diff
+    long eventTime;
+
+    // 0 for keycodes the pad can't hold
+    static int buttonBit(int keycode) {
+        if (keycode >= 96 && keycode < 96 + 15) return 1 << (keycode - 96);
+        if (keycode >= 188 && keycode < 188 + 16) return 1 << (15 + keycode - 188);
+        return 0;
+    }
+
+    void setButton(int keycode, boolean pressed) {
+        int bit = buttonBit(keycode);
+        buttons = pressed ? (buttons | bit) : (buttons & ~bit);
+    }
+
+    boolean isPressed(int keycode) {
+        return (buttons & buttonBit(keycode)) != 0;
+    }
+
+    void setHat(int x, int y) {
+        hatX = x;
+        hatY = y;
+    }
+
+    void setAxis(int axis, float value) {
+        if (axis >= 0 && axis < AXIS_COUNT) axes[axis] = value;
+    }
+
+    // Neutral pad: nothing held, hat and sticks centered
+    void clear() {
+        buttons = 0;
+        hatX = 0;
+        hatY = 0;
+        for (int i = 0; i < AXIS_COUNT; i++) axes[i] = 0;
+    }
+
+    void copyFrom(VirtualPadState other) {
+        deviceId = other.deviceId;
+        buttons = other.buttons;
+        hatX = other.hatX;
+        hatY = other.hatY;
+        System.arraycopy(other.axes, 0, axes, 0, AXIS_COUNT);
+        eventTime = other.eventTime;
+    }
+
+    /**
+     * Sends every difference between this state and {@code previous} to {@code sink}, then
+     * makes {@code previous} a copy of this state. A different device id counts as everything
+     * having changed. The hat goes first and releases before presses, so a button pressed in
+     * the same event as a direction is seen with that direction already held.
+     *
+     * @return whether anything was sent.
+     */
+    boolean submit(VirtualPadState previous, Sink sink) {
+        boolean full = previous.deviceId != deviceId;
+        boolean sent = false;
+
+        if (full || hatX != previous.hatX || hatY != previous.hatY) {
+            sink.hat(deviceId, 0, hatX, hatY);
+            sent = true;
+        }
+        for (int i = 0; i < AXIS_COUNT; i++) {
+            if (full || axes[i] != previous.axes[i]) {
+                sink.joy(deviceId, i, axes[i]);
+                sent = true;
+            }
+        }
+
+        int released = full ? 0 : (previous.buttons & ~buttons);
+        int pressed = full ? buttons : (buttons & ~previous.buttons);
+        for (int i = 0; i < BUTTON_CODES.length; i++) {
+            if ((released & (1 << i)) != 0) sink.padUp(deviceId, BUTTON_CODES[i]);
+        }
+        for (int i = 0; i < BUTTON_CODES.length; i++) {
+            if ((pressed & (1 << i)) != 0) sink.padDown(deviceId, BUTTON_CODES[i]);
+        }
+
+        previous.copyFrom(this);
+        return sent || released != 0 || pressed != 0;
+    }
+}
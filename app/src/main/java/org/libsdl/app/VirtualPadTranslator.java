@@ -0,0 +1,271 @@
+package org.libsdl.app;
+
+/**
+ * Turns raw pointer samples into virtual pad state: which button each finger is on, where the
+ * sticks are pushed and which way the D-pad points. Feed it pointer changes followed by
+ * {@link #endSample} and it hands the resulting {@link VirtualPadState} to its {@link Output}
+ * once per sample. Everything runs on one thread and allocates nothing, and it has no Android
+ * dependencies so recorded input can be replayed through it off-device.
+ */
+class VirtualPadTranslator {
+    // Android pointer ids are always below this
+    static final int MAX_POINTERS = 32;
+    // Slot value for a pointer that isn't tracked as a button/dpad finger
+    private static final int UNTRACKED = Integer.MIN_VALUE;
+
+    /** Receives the pad state after every sample. */
+    interface Output {
+        void submit(VirtualPadState state);
+        // SDL was reset to this state out of band; nothing needs sending
+        void reset(VirtualPadState state);
+    }
+
+    private final Output mOutput;
+    private PadGeometry mGeometry;
+    private volatile PadGeometry mPostedGeometry;
+
+    private final VirtualPadState mState = new VirtualPadState();
+    private final int[] mPointerCodes = new int[MAX_POINTERS]; // PointerID -> Keycode/Axis
+    private final float[] mPointerX = new float[MAX_POINTERS];
+    private final float[] mPointerY = new float[MAX_POINTERS];
+    private int mActivePointers; // Bit per pointer id currently down
+    private final int[] mStickPointers = {-1, -1};
+    // Stick deflection as touched, X/Y per stick; filtered into the state once per sample
+    private final float[] mStickRaw = new float[4];
+    private final float[] mStickFiltered = new float[4];
+    private final float[] mStickOutput = new float[4]; // Last filtered values put in the state
+    private final AxisFilter mStickFilter = new AxisFilter(4);
+
+    VirtualPadTranslator(Output output) {
+        mOutput = output;
+        java.util.Arrays.fill(mPointerCodes, UNTRACKED);
+        mStickFilter.pair(0, 1);
+        mStickFilter.pair(2, 3);
+    }
+
+    void setStickFilter(AxisFilter.Settings settings) {
+        mStickFilter.setSettings(settings);
+    }
+
+    AxisFilter.Settings getStickFilter() {
+        return mStickFilter.getSettings();
+    }
+
+    void setGeometry(PadGeometry geometry) {
+        mGeometry = geometry;
+    }
+
+    PadGeometry getGeometry() {
+        return mGeometry;
+    }
+
+    // Any thread: hands over a geometry that applyPostedGeometry() later switches to
+    void postGeometry(PadGeometry geometry) {
+        mPostedGeometry = geometry;
+    }
+
+    void applyPostedGeometry() {
+        mGeometry = mPostedGeometry;
+    }
+
+    int getDeviceId() {
+        return mState.deviceId;
+    }
+
+    // No finger down and everything released, i.e. the pad is neutral after the last sample
+    boolean isIdle() {
+        return mActivePointers == 0;
+    }
+
+    // Forget every pointer and start from a neutral pad on the given device
+    void reset(int deviceId) {
+        java.util.Arrays.fill(mPointerCodes, UNTRACKED);
+        mActivePointers = 0;
+        mStickPointers[PadGeometry.STICK_LEFT] = -1;
+        mStickPointers[PadGeometry.STICK_RIGHT] = -1;
+        java.util.Arrays.fill(mStickRaw, 0);
+        java.util.Arrays.fill(mStickOutput, 0);
+        mStickFilter.reset();
+        mState.deviceId = deviceId;
+        mState.clear();
+        mOutput.reset(mState);
+    }
+
+    void pointerDown(int pointerId, float x, float y) {
+        PadGeometry g = mGeometry;
+        if (g == null || pointerId < 0 || pointerId >= MAX_POINTERS) return;
+        track(pointerId, x, y);
+
+        // Check Joysticks first
+        int hit = g.hitIndex.find(x, y);
+        if (hit == PadGeometry.HIT_LEFT_STICK) {
+            mStickPointers[PadGeometry.STICK_LEFT] = pointerId;
+        } else if (hit == PadGeometry.HIT_RIGHT_STICK) {
+            mStickPointers[PadGeometry.STICK_RIGHT] = pointerId;
+        } else {
+            // If not a stick, it's a button/dpad
+            updatePointer(pointerId, hit);
+        }
+    }
+
+    void pointerMove(int pointerId, float x, float y) {
+        PadGeometry g = mGeometry;
+        if (g == null || pointerId < 0 || pointerId >= MAX_POINTERS) return;
+        track(pointerId, x, y);
+
+        if (pointerId == mStickPointers[PadGeometry.STICK_LEFT]) {
+            moveStick(g, PadGeometry.STICK_LEFT, x, y);
+        } else if (pointerId == mStickPointers[PadGeometry.STICK_RIGHT]) {
+            moveStick(g, PadGeometry.STICK_RIGHT, x, y);
+        } else {
+            // Check if we are actually over a NEW button
+            int currentButton = buttonAt(g, x, y);
+            int lastButton = mPointerCodes[pointerId];
+
+            // Only update if the button under THIS finger has actually changed
+            if (lastButton == UNTRACKED || currentButton != lastButton) {
+                updatePointer(pointerId, currentButton);
+            }
+        }
+    }
+
+    void pointerUp(int pointerId) {
+        if (pointerId < 0 || pointerId >= MAX_POINTERS) return;
+        mActivePointers &= ~(1 << pointerId);
+
+        if (pointerId == mStickPointers[PadGeometry.STICK_LEFT]) {
+            centerStick(PadGeometry.STICK_LEFT);
+        } else if (pointerId == mStickPointers[PadGeometry.STICK_RIGHT]) {
+            centerStick(PadGeometry.STICK_RIGHT);
+        } else {
+            int lastCode = mPointerCodes[pointerId];
+            mPointerCodes[pointerId] = UNTRACKED;
+            if (lastCode != UNTRACKED && lastCode != -1) handleInput(lastCode, false);
+        }
+    }
+
+    // The gesture was taken away from us; let go of everything
+    void cancel() {
+        for (int id = 0; id < MAX_POINTERS; id++) {
+            if ((mActivePointers & (1 << id)) != 0) pointerUp(id);
+        }
+    }
+
+    // Closes a sample taken at eventTime (uptime millis) and submits the resulting state
+    void endSample(long eventTime) {
+        PadGeometry g = mGeometry;
+        if (g != null) {
+            updateSticks(g, eventTime);
+            updateDpad(g);
+        }
+        mState.eventTime = eventTime;
+        mOutput.submit(mState);
+    }
+
+    private void track(int pointerId, float x, float y) {
+        mActivePointers |= 1 << pointerId;
+        mPointerX[pointerId] = x;
+        mPointerY[pointerId] = y;
+    }
+
+    private static int buttonAt(PadGeometry g, float x, float y) {
+        // Return -1 for analog sticks and the D-Pad so they don't enter the pointer code logic
+        int hit = g.hitIndex.find(x, y);
+        return (hit == PadGeometry.HIT_LEFT_STICK || hit == PadGeometry.HIT_RIGHT_STICK) ? -1 : hit;
+    }
+
+    private void moveStick(PadGeometry g, int stick, float x, float y) {
+        float radius = g.stickRadius[stick];
+        if (radius <= 0) return;
+
+        float dx = x - g.stickCenterX[stick];
+        float dy = y - g.stickCenterY[stick];
+        float distance = (float) Math.sqrt(dx * dx + dy * dy);
+
+        if (distance > radius) {
+            dx = (dx / distance) * radius;
+            dy = (dy / distance) * radius;
+        }
+
+        mStickRaw[2 * stick] = dx / radius;
+        mStickRaw[2 * stick + 1] = dy / radius;
+    }
+
+    private void centerStick(int stick) {
+        mStickRaw[2 * stick] = 0;
+        mStickRaw[2 * stick + 1] = 0;
+        mStickPointers[stick] = -1;
+    }
+
+    /** Whether the sticks' filter has caught up with the fingers, see {@link #settle}. */
+    boolean isSettled() {
+        return mStickFilter.isSettled();
+    }
+
+    /**
+     * Called once input has stopped for {@link AxisFilter#SETTLE_MILLIS}: moves the sticks to
+     * where the fingers are and submits the state if that changed it.
+     */
+    void settle(long time) {
+        if (mStickFilter.isSettled()) return;
+        mStickFilter.settle(mStickFiltered);
+        PadGeometry g = mGeometry;
+        if (g == null) return;
+        applySticks(g, mStickFiltered);
+        mState.eventTime = time;
+        mOutput.submit(mState);
+    }
+
+    private void updateSticks(PadGeometry g, long eventTime) {
+        float[] values = mStickFiltered;
+        System.arraycopy(mStickRaw, 0, values, 0, values.length);
+        mStickFilter.filter(values, eventTime);
+        applySticks(g, values);
+    }
+
+    private void applySticks(PadGeometry g, float[] values) {
+        for (int stick = 0; stick < 2; stick++) {
+            int x = 2 * stick, y = x + 1;
+            // Only touch the state when the stick moved, so it can't stomp a trigger on a shared axis
+            if (values[x] == mStickOutput[x] && values[y] == mStickOutput[y]) continue;
+            mStickOutput[x] = values[x];
+            mStickOutput[y] = values[y];
+            mState.setAxis(g.stickAxisX[stick], values[x]);
+            mState.setAxis(g.stickAxisY[stick], values[y]);
+        }
+    }
+
+    private void updatePointer(int pointerId, int newCode) {
+        int oldCode = mPointerCodes[pointerId];
+
+        if (oldCode != UNTRACKED && oldCode != -1) handleInput(oldCode, false);
+        if (newCode != -1) handleInput(newCode, true);
+
+        mPointerCodes[pointerId] = newCode;
+    }
+
+    private void handleInput(int code, boolean pressed) {
+        if (code >= 4000) { // TRIGGERS
+            mState.setAxis(code - 4000, pressed ? 1.0f : 0.0f);
+        } else if (code >= 1000) {
+            // D-PAD codes only ever drive visuals (Logic is in updateDpad)
+        } else { // STANDARD BUTTONS
+            mState.setButton(code, pressed);
+        }
+    }
+
+    private void updateDpad(PadGeometry g) {
+        int sector = DpadSectors.NONE;
+        DpadSectors sectors = g.dpadSectors;
+
+        for (int id = 0; id < MAX_POINTERS && sectors != null; id++) {
+            if ((mActivePointers & (1 << id)) == 0) continue;
+
+            // Only fingers in the D-pad's ring count, not ones in the deadzone at its center
+            sector = sectors.classify(mPointerX[id] - g.dpadCenterX, mPointerY[id] - g.dpadCenterY);
+            if (sector != DpadSectors.NONE) break; // One finger is enough for the D-pad
+        }
+
+        mState.setHat(DpadSectors.hatX(sector), DpadSectors.hatY(sector));
+    }
+}
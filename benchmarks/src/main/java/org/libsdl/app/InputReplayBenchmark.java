@@ -0,0 +1,183 @@
+package org.libsdl.app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Virtual pad translation throughput, in touch samples per second: replays a synthetic trace
+ * of quarter circles on the D-pad, stick spins and fingers sliding across the face buttons
+ * through {@link InputTraceReplayer}. Setup also checks the replay matches the recording, so
+ * this lives in the app's package to reach the package-private input classes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InputReplayBenchmark {
+    private static final int TRACE_SAMPLES = 100000;
+    // Every filter stage on, so the replay covers the whole stick path
+    private static final AxisFilter.Settings STICK_FILTER = new AxisFilter.Settings(0.08f, true, 1f, 1f / 128, 10f, 20f);
+
+    private byte[] mTrace;
+
+    @Setup
+    public void setUp() throws IOException {
+        mTrace = record(TRACE_SAMPLES);
+        InputTraceReplayer.Result result = InputTraceReplayer.replay(new ByteArrayInputStream(mTrace), null);
+        if (result.mismatches != 0) throw new IllegalStateException("Replay diverged: " + result);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRACE_SAMPLES)
+    public long replay() throws IOException {
+        return InputTraceReplayer.replay(new ByteArrayInputStream(mTrace), null).calls;
+    }
+
+    // Same wiring as the device: every sample is written, then handed to the translator, whose calls are written too
+    private static byte[] record(int samples) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final InputTraceWriter writer = new InputTraceWriter(bytes);
+        final VirtualPadState submitted = new VirtualPadState();
+        VirtualPadTranslator translator = new VirtualPadTranslator(new VirtualPadTranslator.Output() {
+            @Override
+            public void submit(VirtualPadState state) {
+                state.submit(submitted, writer);
+            }
+
+            @Override
+            public void reset(VirtualPadState state) {
+                submitted.copyFrom(state);
+            }
+        });
+        PadGeometry geometry = defaultGeometry();
+        translator.setGeometry(geometry);
+        translator.setStickFilter(STICK_FILTER);
+        translator.reset(0);
+        writer.begin(0, geometry, STICK_FILTER);
+
+        Recorder r = new Recorder(writer, translator, samples);
+        while (!r.full()) {
+            // Quarter circle forward on the D-pad: down, down-forward, forward
+            r.down(0, 125, 1040);
+            for (int step = 0; step <= 12 && !r.full(); step++) {
+                double angle = Math.toRadians(90 - step * 7.5);
+                r.move(0, (float) (125 + 60 * Math.cos(angle)), (float) (905 + 60 * Math.sin(angle)));
+            }
+            // Slide a second finger across the face buttons while the first is held
+            r.down(1, 1500, 900);
+            for (int x = 1500; x <= 1850 && !r.full(); x += 25) r.move(1, x, 900);
+            r.up(1);
+            r.up(0);
+            // Spin the left stick
+            r.down(2, 338, 905);
+            for (int step = 0; step < 24 && !r.full(); step++) {
+                double angle = Math.toRadians(step * 15);
+                r.move(2, (float) (338 + 70 * Math.cos(angle)), (float) (905 + 70 * Math.sin(angle)));
+            }
+            // Hold it still long enough for the input thread to settle it
+            r.settle();
+            r.up(2);
+        }
+        writer.close();
+        return bytes.toByteArray();
+    }
+
+    // Roughly the stock layout on a 1920x1080 screen
+    private static PadGeometry defaultGeometry() {
+        PadHitIndex hits = new PadHitIndex();
+        hits.add(275, 843, 400, 968, PadGeometry.HIT_LEFT_STICK);
+        hits.add(1700, 700, 1825, 825, PadGeometry.HIT_RIGHT_STICK);
+        hits.add(50, 830, 200, 980, -1);
+        int[] codes = {96, 97, 99, 100, 102, 103, 4004, 4005};
+        for (int i = 0; i < codes.length; i++) {
+            float left = 1500 + (i % 4) * 90;
+            float top = 860 - (i / 4) * 90;
+            hits.add(left, top, left + 80, top + 80, codes[i]);
+        }
+        hits.build(1920, 1080);
+
+        PadGeometry g = new PadGeometry(hits);
+        g.setStick(PadGeometry.STICK_LEFT, 275, 843, 125, 125, 0, 1);
+        g.setStick(PadGeometry.STICK_RIGHT, 1700, 700, 125, 125, 2, 3);
+        g.setDpad(50, 830, 150, 150, DpadSectors.DEFAULT_DIAGONAL_DEGREES, DpadSectors.DEFAULT_DEADZONE,
+                DpadSectors.DEFAULT_OUTER);
+        return g;
+    }
+
+    private static class Recorder {
+        private final InputTraceWriter mWriter;
+        private final VirtualPadTranslator mTranslator;
+        private final int mLimit;
+        private int mCount;
+        private long mTime;
+
+        Recorder(InputTraceWriter writer, VirtualPadTranslator translator, int limit) {
+            mWriter = writer;
+            mTranslator = translator;
+            mLimit = limit;
+        }
+
+        boolean full() {
+            return mCount >= mLimit;
+        }
+
+        void down(int pointer, float x, float y) {
+            if (!take(2)) return;
+            mWriter.sample(PointerSampleRing.KIND_DOWN, pointer, x, y, 0);
+            mTranslator.pointerDown(pointer, x, y);
+            end();
+        }
+
+        void move(int pointer, float x, float y) {
+            if (!take(2)) return;
+            mWriter.sample(PointerSampleRing.KIND_MOVE, pointer, x, y, 0);
+            mTranslator.pointerMove(pointer, x, y);
+            end();
+        }
+
+        void up(int pointer) {
+            if (!take(2)) return;
+            mWriter.sample(PointerSampleRing.KIND_UP, pointer, 0, 0, 0);
+            mTranslator.pointerUp(pointer);
+            end();
+        }
+
+        void settle() {
+            if (mTranslator.isSettled() || !take(1)) return;
+            mTime += AxisFilter.SETTLE_MILLIS;
+            mWriter.sample(PointerSampleRing.KIND_SETTLE, 0, 0, 0, mTime);
+            mTranslator.settle(mTime);
+        }
+
+        private boolean take(int n) {
+            if (mCount + n > mLimit) {
+                mCount = mLimit;
+                return false;
+            }
+            mCount += n;
+            return true;
+        }
+
+        private void end() {
+            mTime += 4; // 240 Hz
+            mWriter.sample(PointerSampleRing.KIND_END, 0, 0, 0, mTime);
+            mTranslator.endSample(mTime);
+        }
+    }
+}
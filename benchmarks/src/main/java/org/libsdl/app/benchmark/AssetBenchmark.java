@@ -0,0 +1,108 @@
+package org.libsdl.app.benchmark;
+
+import org.libsdl.app.AssetIO;
+import org.libsdl.app.AssetIndex;
+import org.libsdl.app.AssetState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup costs of the asset pipeline against synthetic packs of 100 / 1,000 / 10,000 files:
+ * hashing local copies, the two extraction copy paths, and the update check with and without
+ * a persisted AssetState.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssetBenchmark {
+    private static final String[] CHECK_DIRS = new String[] { SyntheticContent.CHECK_DIR };
+
+    @Param({ "100", "1000", "10000" })
+    public int fileCount;
+
+    private SyntheticContent mContent;
+    private File mCopyDir;
+    private File mEmptyStateDir;
+    private final byte[] mBuffer = new byte[16384];
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mContent = new SyntheticContent(fileCount);
+        mContent.warmState();
+        mCopyDir = new File(mContent.root, "copy");
+        mEmptyStateDir = new File(mContent.root, "nostate");
+        if (!mCopyDir.mkdirs() || !mEmptyStateDir.mkdirs()) throw new IOException("Could not create scratch dirs");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mContent.delete();
+    }
+
+    @Benchmark
+    public long fileCRC() {
+        long sum = 0;
+        for (AssetIndex.Entry entry : mContent.index.entries()) {
+            sum += AssetState.computeFileCRC(new File(mContent.baseDir, entry.path));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long bufferedCopy() throws IOException {
+        long total = 0;
+        int i = 0;
+        for (AssetIndex.Entry entry : mContent.index.entries()) {
+            try (FileInputStream in = new FileInputStream(new File(mContent.baseDir, entry.path));
+                 FileOutputStream out = new FileOutputStream(new File(mCopyDir, Integer.toString(i++)))) {
+                total += AssetIO.copy(in, out, mBuffer);
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long channelTransfer() throws IOException {
+        long total = 0;
+        int i = 0;
+        for (AssetIndex.Entry entry : mContent.index.entries()) {
+            try (FileInputStream in = new FileInputStream(new File(mContent.baseDir, entry.path));
+                 FileOutputStream out = new FileOutputStream(new File(mCopyDir, Integer.toString(i++)))) {
+                total += AssetIO.transfer(in.getChannel(), 0, entry.size, out.getChannel());
+            }
+        }
+        return total;
+    }
+
+    // First launch after upgrading from a build without AssetState: every local file is hashed
+    @Benchmark
+    public String updateCheckCold() {
+        return AssetState.load(mEmptyStateDir).findOutdated(mContent.baseDir, mContent.index, CHECK_DIRS);
+    }
+
+    // Every later launch: size and mtime match the persisted state, nothing is read
+    @Benchmark
+    public String updateCheckWarm() {
+        return AssetState.load(mContent.baseDir).findOutdated(mContent.baseDir, mContent.index, CHECK_DIRS);
+    }
+}
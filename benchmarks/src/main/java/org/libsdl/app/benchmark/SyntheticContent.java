@@ -0,0 +1,63 @@
+package org.libsdl.app.benchmark;
+
+import org.libsdl.app.AssetIndex;
+import org.libsdl.app.AssetState;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * A throwaway content tree shaped like an extracted pack: fileCount files under
+ * external/script with sizes between 1 and 16 KB, plus the matching AssetIndex.
+ */
+class SyntheticContent {
+    static final String CHECK_DIR = "external/script";
+
+    final File root;
+    final File baseDir;
+    final AssetIndex index = new AssetIndex();
+
+    SyntheticContent(int fileCount) throws IOException {
+        root = Files.createTempDirectory("assetbench").toFile();
+        baseDir = new File(root, "content");
+        File dir = new File(baseDir, CHECK_DIR);
+        if (!dir.mkdirs()) throw new IOException("Could not create " + dir);
+
+        Random random = new Random(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            byte[] data = new byte[1024 + random.nextInt(15 * 1024)];
+            random.nextBytes(data);
+            String path = CHECK_DIR + "/file" + i + ".lua";
+            try (OutputStream out = new FileOutputStream(new File(baseDir, path))) {
+                out.write(data);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length);
+            index.put(new AssetIndex.Entry(path, data.length, crc.getValue()));
+        }
+    }
+
+    // Hashes everything once and persists it, like the first launch after an install would
+    void warmState() throws IOException {
+        AssetState state = AssetState.load(baseDir);
+        state.findOutdated(baseDir, index, new String[] { CHECK_DIR });
+        state.save();
+    }
+
+    void delete() {
+        delete(root);
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) delete(child);
+        }
+        f.delete();
+    }
+}
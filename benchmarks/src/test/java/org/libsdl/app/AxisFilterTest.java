@@ -0,0 +1,132 @@
+package org.libsdl.app;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AxisFilterTest {
+    // Every stage on, like an engine that asks for filtering would set it up
+    private static final AxisFilter.Settings ALL = new AxisFilter.Settings(0.08f, true, 1f, 1f / 128, 10f, 20f);
+    private static final AxisFilter.Settings SMOOTH_ONLY = new AxisFilter.Settings(0f, false, 1f, 0f, 10f, 20f);
+
+    @Test
+    public void noneLeavesValuesAlone() {
+        AxisFilter filter = stickAndTrigger(AxisFilter.Settings.NONE);
+        float[] values = {0.3f, -0.01f, -0.97f};
+        filter.filter(values, 0);
+        assertArrayEquals(new float[]{0.3f, -0.01f, -0.97f}, values, 0f);
+        assertTrue(filter.isSettled());
+    }
+
+    @Test
+    public void radialDeadzoneRestsTheStickAndRescalesTheRest() {
+        AxisFilter filter = stickAndTrigger(new AxisFilter.Settings(0.2f, true, 1f, 0f, 0f, 0f));
+        float[] values = {0.1f, 0.1f, 0.1f};
+        filter.filter(values, 0);
+        assertArrayEquals(new float[]{0f, 0f, 0.1f}, values, 0f);
+
+        values = new float[]{0.6f, 0f, 0.1f};
+        filter.filter(values, 1);
+        assertEquals(0.5f, values[0], 1e-6f);
+        assertEquals(0f, values[1], 0f);
+    }
+
+    @Test
+    public void curveKeepsTheEnds() {
+        AxisFilter filter = stickAndTrigger(new AxisFilter.Settings(0f, false, 2f, 0f, 0f, 0f));
+        float[] values = {0.5f, -1f, 0.5f};
+        filter.filter(values, 0);
+        assertEquals(0.25f, values[0], 1e-6f);
+        assertEquals(-1f, values[1], 0f);
+        // Not part of a stick
+        assertEquals(0.5f, values[2], 0f);
+    }
+
+    @Test
+    public void quantizationHoldsUntilMostOfAStepAway() {
+        float step = 1f / 128;
+        AxisFilter filter = stickAndTrigger(new AxisFilter.Settings(0f, false, 1f, step, 0f, 0f));
+        float[] values = {10 * step, 0, 0};
+        filter.filter(values, 0);
+        assertEquals(10 * step, values[0], 0f);
+
+        values[0] = 10.6f * step;
+        filter.filter(values, 1);
+        assertEquals(10 * step, values[0], 0f);
+
+        values[0] = 10.8f * step;
+        filter.filter(values, 2);
+        assertEquals(11 * step, values[0], 0f);
+    }
+
+    @Test
+    public void heldStickReachesFullDeflection() {
+        AxisFilter filter = stickAndTrigger(ALL);
+        float[] values = new float[3];
+        long time = 0;
+        for (float x : new float[]{0.3f, 0.6f, 0.9f, 1f}) {
+            values[0] = x;
+            values[1] = 0;
+            values[2] = -1;
+            filter.filter(values, time += 8);
+        }
+        assertEquals(1f, values[0], 0f);
+    }
+
+    @Test
+    public void triggerReachesTheEndOfItsTravel() {
+        AxisFilter filter = stickAndTrigger(ALL);
+        float[] values = new float[3];
+        long time = 0;
+        for (float trigger = -1f; trigger <= 1f; trigger += 0.25f) {
+            values[2] = trigger;
+            filter.filter(values, time += 8);
+        }
+        assertEquals(1f, values[2], 0f);
+    }
+
+    @Test
+    public void settleLandsOnTheInput() {
+        AxisFilter filter = stickAndTrigger(SMOOTH_ONLY);
+        float[] values = new float[3];
+        long time = 0;
+        for (float x : new float[]{0.2f, 0.5f, 0.8f}) {
+            values[0] = x;
+            values[1] = -x / 2;
+            values[2] = x;
+            filter.filter(values, time += 8);
+        }
+        assertTrue(values[0] < 0.8f);
+        assertFalse(filter.isSettled());
+
+        filter.settle(values);
+        assertArrayEquals(new float[]{0.8f, -0.4f, 0.8f}, values, 0f);
+        assertTrue(filter.isSettled());
+    }
+
+    @Test
+    public void settleRoundsToTheNearestStep() {
+        float step = 1f / 128;
+        AxisFilter filter = stickAndTrigger(new AxisFilter.Settings(0f, false, 1f, step, 0f, 0f));
+        float[] values = {10 * step, 0, 0};
+        filter.filter(values, 0);
+        values[0] = 10.6f * step;
+        filter.filter(values, 1);
+        assertFalse(filter.isSettled());
+
+        filter.settle(values);
+        assertEquals(11 * step, values[0], 0f);
+        assertTrue(filter.isSettled());
+    }
+
+    // Axes 0 and 1 are a stick, 2 a trigger
+    private static AxisFilter stickAndTrigger(AxisFilter.Settings settings) {
+        AxisFilter filter = new AxisFilter(3);
+        filter.pair(0, 1);
+        filter.setSettings(settings);
+        return filter;
+    }
+}
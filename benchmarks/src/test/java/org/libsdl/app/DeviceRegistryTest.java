@@ -0,0 +1,67 @@
+package org.libsdl.app;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class DeviceRegistryTest {
+
+    @Test
+    public void putGetRemoveAcrossGrowth() {
+        DeviceRegistry<String> registry = new DeviceRegistry<>();
+        for (int id = 0; id < 100; id++) registry.put(id, "device " + id);
+        assertEquals(100, registry.size());
+        for (int id = 0; id < 100; id += 2) assertEquals("device " + id, registry.remove(id));
+        assertEquals(50, registry.size());
+        for (int id = 0; id < 100; id++) {
+            if (id % 2 == 0) {
+                assertNull(registry.get(id));
+            } else {
+                assertEquals("device " + id, registry.get(id));
+            }
+        }
+        assertNull(registry.remove(0));
+    }
+
+    @Test
+    public void unmarkedFindsTheDevicesThatAreGone() {
+        DeviceRegistry<String> registry = new DeviceRegistry<>();
+        for (int id = 1; id <= 4; id++) registry.put(id, "device " + id);
+        registry.beginMark();
+        registry.mark(1);
+        registry.mark(3);
+        registry.mark(7);
+        int[] gone = registry.unmarked();
+        java.util.Arrays.sort(gone);
+        assertArrayEquals(new int[]{2, 4}, gone);
+    }
+
+    // A device that stays registered must be found by every lookup, however the table changes
+    // around it on another thread
+    @Test
+    public void lookupsDuringChangesAlwaysFindAStableDevice() throws InterruptedException {
+        final DeviceRegistry<String> registry = new DeviceRegistry<>();
+        registry.put(5, "stable");
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                for (int i = 0; i < 2000000 && failure.get() == null; i++) {
+                    if (!"stable".equals(registry.get(5))) throw new AssertionError("Lost the stable device");
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        reader.start();
+        while (reader.isAlive()) {
+            for (int id = 100; id < 200; id++) registry.put(id, "churn");
+            for (int id = 100; id < 200; id++) registry.remove(id);
+        }
+        reader.join();
+        if (failure.get() != null) throw new AssertionError(failure.get());
+    }
+}
@@ -0,0 +1,86 @@
+package org.libsdl.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/** Compares the sector table against classifying every point exactly with atan2. */
+public class DpadSectorsTest {
+    private static final float RADIUS = 75;
+
+    @Test
+    public void defaultTuningMatchesExactClassification() {
+        check(DpadSectors.DEFAULT_DIAGONAL_DEGREES, DpadSectors.DEFAULT_DEADZONE, DpadSectors.DEFAULT_OUTER);
+    }
+
+    @Test
+    public void customTuningMatchesExactClassification() {
+        check(45f, 0.35f, 1.2f);
+        check(80f, 0f, 2f);
+    }
+
+    @Test
+    public void narrowCardinalsStillReachTheHat() {
+        DpadSectors sectors = new DpadSectors(RADIUS, 80f, 0.2f, 1.5f);
+        assertEquals(1, DpadSectors.hatX(sectors.classify(50, 0)));
+        assertEquals(0, DpadSectors.hatY(sectors.classify(50, 0)));
+        assertEquals(DpadSectors.NONE, sectors.classify(0, 0));
+        assertEquals(DpadSectors.NONE, sectors.classify(RADIUS * 1.5f + 1, 0));
+    }
+
+    // Points further than one cell from every sector edge must agree exactly, and the ones
+    // closer must stay a small share of the pad
+    private static void check(float diagonal, float deadzone, float outer) {
+        DpadSectors sectors = new DpadSectors(RADIUS, diagonal, deadzone, outer);
+        float extent = RADIUS * outer;
+        double cellDiagonal = Math.sqrt(2) * 2 * extent / DpadSectors.RESOLUTION;
+        Random random = new Random(20);
+        int points = 200000, mismatches = 0;
+        for (int i = 0; i < points; i++) {
+            float dx = (random.nextFloat() * 2 - 1) * extent;
+            float dy = (random.nextFloat() * 2 - 1) * extent;
+            int expected = exact(dx, dy, diagonal, deadzone, outer);
+            int actual = sectors.classify(dx, dy);
+            if (actual == expected) continue;
+            mismatches++;
+            double edge = distanceToEdge(dx, dy, diagonal, deadzone, outer);
+            assertTrue("(" + dx + ", " + dy + ") is " + actual + ", not " + expected + ", "
+                    + edge + " px from an edge", edge <= cellDiagonal);
+        }
+        assertTrue(mismatches + " of " + points + " points differ", mismatches < points * 0.02);
+    }
+
+    // The D-pad's classification before the table: distance, then walk the angle ranges
+    private static int exact(float dx, float dy, float diagonal, float deadzone, float outer) {
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        if (distance <= RADIUS * deadzone || distance >= RADIUS * outer) return DpadSectors.NONE;
+        double cardinal = 90 - diagonal;
+        double angle = Math.toDegrees(Math.atan2(dy, dx));
+        if (angle < 0) angle += 360;
+        double start = -cardinal / 2;
+        for (int sector = 1; sector <= 8; sector++) {
+            double width = (sector & 1) == 1 ? cardinal : diagonal;
+            if (angle >= start && angle < start + width) return sector;
+            if (angle - 360 >= start && angle - 360 < start + width) return sector;
+            start += width;
+        }
+        return 1;
+    }
+
+    private static double distanceToEdge(float dx, float dy, float diagonal, float deadzone, float outer) {
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        double nearest = Math.min(Math.abs(distance - RADIUS * deadzone), Math.abs(distance - RADIUS * outer));
+        double angle = Math.atan2(dy, dx);
+        double edge = Math.toRadians(-(90 - diagonal) / 2);
+        for (int i = 0; i < 8; i++) {
+            // Edges are rays from the center, so points behind one are nearest to the center
+            double along = Math.cos(angle - edge);
+            nearest = Math.min(nearest, along > 0 ? distance * Math.abs(Math.sin(angle - edge)) : distance);
+            edge += Math.toRadians((i & 1) == 0 ? 90 - diagonal : diagonal);
+        }
+        return nearest;
+    }
+}
@@ -0,0 +1,59 @@
+package org.libsdl.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PointerSampleRingTest {
+
+    @Test
+    public void putDropsInsteadOfBlockingWhenFull() {
+        PointerSampleRing ring = new PointerSampleRing(8);
+        for (int i = 0; i < 8; i++) assertTrue(ring.put(PointerSampleRing.KIND_MOVE, 0, i, i, 0));
+        assertFalse(ring.put(PointerSampleRing.KIND_MOVE, 0, 8, 8, 0));
+        assertFalse(ring.put(PointerSampleRing.KIND_END, 0, 0, 0, 1234));
+        assertEquals(2, ring.dropped());
+    }
+
+    @Test
+    public void recoveryReleasesPointersAndReplaysResetAndGeometry() {
+        PointerSampleRing ring = new PointerSampleRing(8);
+        for (int i = 0; i < 8; i++) ring.put(PointerSampleRing.KIND_MOVE, 0, i, i, 0);
+        ring.put(PointerSampleRing.KIND_GEOMETRY, 0, 0, 0, 0);
+        ring.put(PointerSampleRing.KIND_RESET, 3, 0, 0, 0);
+        ring.put(PointerSampleRing.KIND_END, 0, 0, 0, 1234);
+        for (int i = 0; i < 8; i++) assertTrue(ring.poll());
+        assertFalse(ring.poll());
+
+        assertTrue(ring.put(PointerSampleRing.KIND_DOWN, 1, 5, 6, 0));
+        expect(ring, PointerSampleRing.KIND_GEOMETRY, 0, 0);
+        expect(ring, PointerSampleRing.KIND_RESET, 3, 0);
+        expect(ring, PointerSampleRing.KIND_CANCEL, 0, 0);
+        expect(ring, PointerSampleRing.KIND_END, 0, 1234);
+        expect(ring, PointerSampleRing.KIND_DOWN, 1, 0);
+        assertEquals(5f, ring.x, 0f);
+        assertFalse(ring.poll());
+    }
+
+    @Test
+    public void staysOverflowedUntilTheReleaseFits() {
+        PointerSampleRing ring = new PointerSampleRing(8);
+        for (int i = 0; i < 8; i++) ring.put(PointerSampleRing.KIND_MOVE, 0, i, i, 0);
+        assertFalse(ring.put(PointerSampleRing.KIND_MOVE, 0, 8, 8, 0));
+        ring.poll();
+        // One free slot can't hold CANCEL, END and the sample, so keep dropping
+        assertFalse(ring.put(PointerSampleRing.KIND_MOVE, 0, 9, 9, 0));
+        ring.poll();
+        ring.poll();
+        assertTrue(ring.put(PointerSampleRing.KIND_MOVE, 0, 10, 10, 0));
+    }
+
+    private static void expect(PointerSampleRing ring, int kind, int pointer, long time) {
+        assertTrue(ring.poll());
+        assertEquals(kind, ring.kind);
+        assertEquals(pointer, ring.pointer);
+        assertEquals(time, ring.time);
+    }
+}
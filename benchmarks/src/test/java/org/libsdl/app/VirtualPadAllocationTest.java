@@ -0,0 +1,100 @@
+package org.libsdl.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+/**
+ * The virtual pad's touch path (sample ring, translator, state diff) must not allocate once
+ * it is warmed up, or the GC churn shows up as input hitches mid-fight.
+ */
+public class VirtualPadAllocationTest {
+    private static final VirtualPadState.Sink NO_OP_SINK = new VirtualPadState.Sink() {
+        @Override
+        public void padDown(int deviceId, int keycode) {
+        }
+
+        @Override
+        public void padUp(int deviceId, int keycode) {
+        }
+
+        @Override
+        public void joy(int deviceId, int axis, float value) {
+        }
+
+        @Override
+        public void hat(int deviceId, int hatId, int x, int y) {
+        }
+    };
+
+    @Test
+    public void steadyStateTouchesDoNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        PointerSampleRing ring = new PointerSampleRing(256);
+        VirtualPadTranslator translator = VirtualPadFixtures.translator(NO_OP_SINK);
+        translator.setStickFilter(new AxisFilter.Settings(0.08f, true, 1.5f, 1f / 128, 10f, 20f));
+
+        // Warm up until everything on the path is loaded and compiled
+        for (int i = 0; i < 20000; i++) gesture(ring, translator, i);
+
+        // Best of a few rounds, since a late JIT recompile can allocate a few bytes on this thread
+        long thread = Thread.currentThread().getId();
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 5 && allocated > 0; round++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < 20000; i++) gesture(ring, translator, i);
+            allocated = Math.min(allocated, threads.getThreadAllocatedBytes(thread) - before);
+        }
+
+        assertEquals("bytes allocated by 20000 gestures", 0, allocated);
+    }
+
+    // One frame of a two-handed gesture: D-pad finger circling, stick finger spinning, a third
+    // finger sliding across the face buttons and lifting every few frames
+    private static void gesture(PointerSampleRing ring, VirtualPadTranslator translator, int frame) {
+        double angle = frame * 0.3;
+        long time = frame * 4L;
+        if (frame % 16 == 0) {
+            ring.put(PointerSampleRing.KIND_DOWN, 0, VirtualPadFixtures.DPAD_X + 40, VirtualPadFixtures.DPAD_Y, time);
+            ring.put(PointerSampleRing.KIND_DOWN, 1, VirtualPadFixtures.STICK_X, VirtualPadFixtures.STICK_Y, time);
+            ring.put(PointerSampleRing.KIND_DOWN, 2, VirtualPadFixtures.buttonX(0), VirtualPadFixtures.buttonY(0), time);
+        } else if (frame % 16 == 15) {
+            ring.put(PointerSampleRing.KIND_UP, 0, 0, 0, time);
+            ring.put(PointerSampleRing.KIND_UP, 1, 0, 0, time);
+            ring.put(PointerSampleRing.KIND_UP, 2, 0, 0, time);
+        } else {
+            ring.put(PointerSampleRing.KIND_MOVE, 0, VirtualPadFixtures.DPAD_X + 40 * (float) Math.cos(angle),
+                    VirtualPadFixtures.DPAD_Y + 40 * (float) Math.sin(angle), time);
+            ring.put(PointerSampleRing.KIND_MOVE, 1, VirtualPadFixtures.STICK_X + 60 * (float) Math.cos(angle),
+                    VirtualPadFixtures.STICK_Y + 60 * (float) Math.sin(angle), time);
+            ring.put(PointerSampleRing.KIND_MOVE, 2, VirtualPadFixtures.buttonX(frame % 4), VirtualPadFixtures.buttonY(0), time);
+        }
+        ring.put(PointerSampleRing.KIND_END, 0, 0, 0, time);
+
+        // What the input thread does with them
+        while (ring.poll()) {
+            switch (ring.kind) {
+                case PointerSampleRing.KIND_DOWN:
+                    translator.pointerDown(ring.pointer, ring.x, ring.y);
+                    break;
+                case PointerSampleRing.KIND_MOVE:
+                    translator.pointerMove(ring.pointer, ring.x, ring.y);
+                    break;
+                case PointerSampleRing.KIND_UP:
+                    translator.pointerUp(ring.pointer);
+                    break;
+                case PointerSampleRing.KIND_END:
+                    translator.endSample(ring.time);
+                    break;
+            }
+        }
+    }
+}
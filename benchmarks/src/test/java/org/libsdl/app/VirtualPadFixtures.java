@@ -0,0 +1,94 @@
+package org.libsdl.app;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Shared pad geometry and a recording sink for the virtual pad tests. */
+class VirtualPadFixtures {
+    static final int WIDTH = 1920, HEIGHT = 1080;
+
+    // D-pad: center (125, 905), radius 75
+    static final float DPAD_X = 125, DPAD_Y = 905, DPAD_RADIUS = 75;
+    // Left stick: center (337.5, 905.5), radius 125 / 3
+    static final float STICK_X = 337.5f, STICK_Y = 905.5f, STICK_RADIUS = 125 / 3f;
+    // Face buttons: 80px squares on a 90px grid starting at (1500, 860), top row at y 770
+    static final int[] BUTTON_CODES = {96, 97, 99, 100, 102, 103, 4004, 4005};
+
+    static PadGeometry geometry() {
+        return geometry(DpadSectors.DEFAULT_DIAGONAL_DEGREES, DpadSectors.DEFAULT_DEADZONE, DpadSectors.DEFAULT_OUTER);
+    }
+
+    static PadGeometry geometry(float diagonalDegrees, float deadzone, float outer) {
+        PadHitIndex hits = new PadHitIndex();
+        hits.add(275, 843, 400, 968, PadGeometry.HIT_LEFT_STICK);
+        hits.add(1700, 600, 1825, 725, PadGeometry.HIT_RIGHT_STICK);
+        hits.add(50, 830, 200, 980, -1);
+        for (int i = 0; i < BUTTON_CODES.length; i++) {
+            float left = 1500 + (i % 4) * 90;
+            float top = 860 - (i / 4) * 90;
+            hits.add(left, top, left + 80, top + 80, BUTTON_CODES[i]);
+        }
+        hits.build(WIDTH, HEIGHT);
+
+        PadGeometry g = new PadGeometry(hits);
+        g.setStick(PadGeometry.STICK_LEFT, 275, 843, 125, 125, 0, 1);
+        g.setStick(PadGeometry.STICK_RIGHT, 1700, 600, 125, 125, 2, 3);
+        g.setDpad(50, 830, 150, 150, diagonalDegrees, deadzone, outer);
+        return g;
+    }
+
+    // Center of face button i
+    static float buttonX(int i) {
+        return 1540 + (i % 4) * 90;
+    }
+
+    static float buttonY(int i) {
+        return 900 - (i / 4) * 90;
+    }
+
+    /** Translator output that forwards to a sink, the way SDLControllerManager does. */
+    static VirtualPadTranslator translator(final VirtualPadState.Sink sink) {
+        final VirtualPadState submitted = new VirtualPadState();
+        VirtualPadTranslator translator = new VirtualPadTranslator(new VirtualPadTranslator.Output() {
+            @Override
+            public void submit(VirtualPadState state) {
+                state.submit(submitted, sink);
+            }
+
+            @Override
+            public void reset(VirtualPadState state) {
+                submitted.copyFrom(state);
+            }
+        });
+        translator.setGeometry(geometry());
+        translator.reset(0);
+        return translator;
+    }
+
+    /** Sink that remembers every call as text, e.g. "hat(0, 0, 1, 1)", and the last axis values. */
+    static class RecordingSink implements VirtualPadState.Sink {
+        final List<String> calls = new ArrayList<>();
+        final float[] axes = new float[VirtualPadState.AXIS_COUNT];
+
+        @Override
+        public void padDown(int deviceId, int keycode) {
+            calls.add("padDown(" + deviceId + ", " + keycode + ")");
+        }
+
+        @Override
+        public void padUp(int deviceId, int keycode) {
+            calls.add("padUp(" + deviceId + ", " + keycode + ")");
+        }
+
+        @Override
+        public void joy(int deviceId, int axis, float value) {
+            calls.add("joy(" + deviceId + ", " + axis + ", " + value + ")");
+            axes[axis] = value;
+        }
+
+        @Override
+        public void hat(int deviceId, int hatId, int x, int y) {
+            calls.add("hat(" + deviceId + ", " + hatId + ", " + x + ", " + y + ")");
+        }
+    }
+}
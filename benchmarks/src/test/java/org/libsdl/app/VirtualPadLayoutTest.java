@@ -0,0 +1,61 @@
+package org.libsdl.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class VirtualPadLayoutTest {
+
+    @Test
+    public void everyGamepadButtonRoundTrips() throws IOException {
+        VirtualPadLayout layout = new VirtualPadLayout();
+        int[] codes = {98, 101, 106, 107, 108, 110, 188, 203, 4004, 4005};
+        for (int code : codes) layout.add(button(code));
+        VirtualPadLayout read = read(write(layout));
+        assertEquals(codes.length, read.elements.size());
+        for (int i = 0; i < codes.length; i++) assertEquals(codes[i], read.elements.get(i).code);
+    }
+
+    @Test
+    public void unsupportedButtonCodesAreRejected() throws IOException {
+        // KEYCODE_A is a keyboard key, not something the virtual gamepad can hold
+        byte[] bytes = write(new VirtualPadLayout(), new VirtualPadLayout.Element(
+                VirtualPadLayout.KIND_BUTTON, 29, 0, 0.5f, 0.5f, 0.1f, 0.1f, null));
+        try {
+            read(bytes);
+            fail("Layout with keycode 29 loaded");
+        } catch (IOException expected) {
+        }
+        try {
+            new VirtualPadLayout().add(button(29));
+            fail("Keycode 29 added");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    static VirtualPadLayout.Element button(int code) {
+        return new VirtualPadLayout.Element(VirtualPadLayout.KIND_BUTTON, code, 0, 0.5f, 0.5f, 0.1f, 0.1f, null);
+    }
+
+    // Writes layout followed by extra elements that add() would refuse
+    static byte[] write(VirtualPadLayout layout, VirtualPadLayout.Element... extra) throws IOException {
+        VirtualPadLayout all = new VirtualPadLayout(layout);
+        for (VirtualPadLayout.Element e : extra) all.elements.add(e);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        all.write(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static VirtualPadLayout read(byte[] bytes) throws IOException {
+        return VirtualPadLayout.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+}
@@ -0,0 +1,205 @@
+package org.libsdl.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Fixed expectations for what reaches SDL for known touch points, so a change to the mapping
+ * (sector widths, hat signs, axis numbers, button codes) fails here rather than only in a
+ * replay of a trace recorded by the same code.
+ */
+public class VirtualPadTranslatorTest {
+    private VirtualPadFixtures.RecordingSink sink;
+    private VirtualPadTranslator translator;
+    private long time;
+
+    @Before
+    public void setUp() {
+        sink = new VirtualPadFixtures.RecordingSink();
+        translator = VirtualPadFixtures.translator(sink);
+    }
+
+    @Test
+    public void dpadDirectionsMapToHats() {
+        // Clockwise on screen from right; screen y grows downwards and so does the hat's
+        int[][] hats = {{1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1}, {1, -1}};
+        for (int i = 0; i < hats.length; i++) {
+            double angle = Math.toRadians(45 * i);
+            down(0, VirtualPadFixtures.DPAD_X + 50 * (float) Math.cos(angle),
+                    VirtualPadFixtures.DPAD_Y + 50 * (float) Math.sin(angle));
+            expect("hat(0, 0, " + hats[i][0] + ", " + hats[i][1] + ")");
+            up(0);
+            expect("hat(0, 0, 0, 0)");
+        }
+    }
+
+    @Test
+    public void cardinalsAreThirtyDegreesWideByDefault() {
+        dpadAt(10);
+        expect("hat(0, 0, 1, 0)");
+        dpadAt(20);
+        expect("hat(0, 0, 1, 1)");
+        dpadAt(-10);
+        expect("hat(0, 0, 1, 0)");
+        dpadAt(-20);
+        expect("hat(0, 0, 1, -1)");
+        dpadAt(260);
+        expect("hat(0, 0, 0, -1)");
+        dpadAt(250);
+        expect("hat(0, 0, -1, -1)");
+    }
+
+    @Test
+    public void dpadIgnoresItsCenterAndFarAway() {
+        down(0, VirtualPadFixtures.DPAD_X + 10, VirtualPadFixtures.DPAD_Y);
+        expect();
+        // Past 1.5 radii, e.g. a finger slid off towards the stick
+        move(0, VirtualPadFixtures.DPAD_X + 120, VirtualPadFixtures.DPAD_Y);
+        expect();
+        move(0, VirtualPadFixtures.DPAD_X + 100, VirtualPadFixtures.DPAD_Y);
+        expect("hat(0, 0, 1, 0)");
+    }
+
+    @Test
+    public void buttonsPressAndRelease() {
+        for (int i = 0; i < 6; i++) {
+            int code = VirtualPadFixtures.BUTTON_CODES[i];
+            down(0, VirtualPadFixtures.buttonX(i), VirtualPadFixtures.buttonY(i));
+            expect("padDown(0, " + code + ")");
+            up(0);
+            expect("padUp(0, " + code + ")");
+        }
+    }
+
+    @Test
+    public void anyGamepadButtonCodeIsHonored() {
+        PadHitIndex hits = new PadHitIndex();
+        int[] codes = {98, 106, 108, 110, 188, 203};
+        for (int i = 0; i < codes.length; i++) hits.add(100 * i, 0, 100 * i + 80, 80, codes[i]);
+        hits.build(VirtualPadFixtures.WIDTH, VirtualPadFixtures.HEIGHT);
+        translator.setGeometry(new PadGeometry(hits));
+        for (int i = 0; i < codes.length; i++) {
+            down(0, 100 * i + 40, 40);
+            expect("padDown(0, " + codes[i] + ")");
+            up(0);
+            expect("padUp(0, " + codes[i] + ")");
+        }
+    }
+
+    @Test
+    public void triggersAreAxesFourAndFive() {
+        down(0, VirtualPadFixtures.buttonX(6), VirtualPadFixtures.buttonY(6));
+        expect("joy(0, 4, 1.0)");
+        down(1, VirtualPadFixtures.buttonX(7), VirtualPadFixtures.buttonY(7));
+        expect("joy(0, 5, 1.0)");
+        up(0);
+        expect("joy(0, 4, 0.0)");
+        up(1);
+        expect("joy(0, 5, 0.0)");
+    }
+
+    @Test
+    public void slidingBetweenButtonsReleasesThenPresses() {
+        down(0, VirtualPadFixtures.buttonX(0), VirtualPadFixtures.buttonY(0));
+        expect("padDown(0, 96)");
+        move(0, VirtualPadFixtures.buttonX(1), VirtualPadFixtures.buttonY(1));
+        expect("padUp(0, 96)", "padDown(0, 97)");
+        // Into the gap between buttons
+        move(0, VirtualPadFixtures.buttonX(1) + 45, VirtualPadFixtures.buttonY(1));
+        expect("padUp(0, 97)");
+    }
+
+    @Test
+    public void leftStickIsAxesZeroAndOne() {
+        float r = VirtualPadFixtures.STICK_RADIUS;
+        down(0, VirtualPadFixtures.STICK_X, VirtualPadFixtures.STICK_Y);
+        expect();
+
+        move(0, VirtualPadFixtures.STICK_X + r / 2, VirtualPadFixtures.STICK_Y);
+        assertAxes(0.5f, 0f);
+        move(0, VirtualPadFixtures.STICK_X, VirtualPadFixtures.STICK_Y - r / 2);
+        assertAxes(0f, -0.5f);
+        // Clamped to the stick's radius, in the direction of the finger
+        move(0, VirtualPadFixtures.STICK_X - 3 * r, VirtualPadFixtures.STICK_Y + 4 * r);
+        assertAxes(-0.6f, 0.8f);
+
+        up(0);
+        expect("joy(0, 0, 0.0)", "joy(0, 1, 0.0)");
+    }
+
+    @Test
+    public void smoothedStickSettlesWhereTheFingerIs() {
+        translator.setStickFilter(new AxisFilter.Settings(0f, true, 1f, 0f, 10f, 20f));
+        float r = VirtualPadFixtures.STICK_RADIUS;
+        down(0, VirtualPadFixtures.STICK_X, VirtualPadFixtures.STICK_Y);
+        move(0, VirtualPadFixtures.STICK_X + r / 4, VirtualPadFixtures.STICK_Y);
+        move(0, VirtualPadFixtures.STICK_X + r / 2, VirtualPadFixtures.STICK_Y);
+        assertTrue(sink.axes[0] < 0.5f);
+        assertFalse(translator.isSettled());
+
+        translator.settle(time + AxisFilter.SETTLE_MILLIS);
+        assertAxes(0.5f, 0f);
+        assertTrue(translator.isSettled());
+    }
+
+    @Test
+    public void stickFingerDoesNotPressButtonsItCrosses() {
+        down(0, VirtualPadFixtures.STICK_X, VirtualPadFixtures.STICK_Y);
+        move(0, VirtualPadFixtures.buttonX(0), VirtualPadFixtures.buttonY(0));
+        move(0, VirtualPadFixtures.buttonX(1), VirtualPadFixtures.buttonY(1));
+        up(0);
+        for (String call : sink.calls) assertTrue(call, call.startsWith("joy(0, 0,") || call.startsWith("joy(0, 1,"));
+    }
+
+    @Test
+    public void cancelReleasesEverything() {
+        down(0, VirtualPadFixtures.DPAD_X - 50, VirtualPadFixtures.DPAD_Y);
+        down(1, VirtualPadFixtures.buttonX(2), VirtualPadFixtures.buttonY(2));
+        sink.calls.clear();
+        translator.cancel();
+        translator.endSample(++time);
+        expect("hat(0, 0, 0, 0)", "padUp(0, 99)");
+    }
+
+    private void dpadAt(double degrees) {
+        double angle = Math.toRadians(degrees);
+        down(0, VirtualPadFixtures.DPAD_X + 50 * (float) Math.cos(angle),
+                VirtualPadFixtures.DPAD_Y + 50 * (float) Math.sin(angle));
+        up(0);
+        sink.calls.remove(sink.calls.size() - 1); // The release
+    }
+
+    private void down(int pointer, float x, float y) {
+        translator.pointerDown(pointer, x, y);
+        translator.endSample(++time);
+    }
+
+    private void move(int pointer, float x, float y) {
+        translator.pointerMove(pointer, x, y);
+        translator.endSample(++time);
+    }
+
+    private void up(int pointer) {
+        translator.pointerUp(pointer);
+        translator.endSample(++time);
+    }
+
+    private void assertAxes(float x, float y) {
+        assertEquals(x, sink.axes[0], 1e-5f);
+        assertEquals(y, sink.axes[1], 1e-5f);
+        sink.calls.clear();
+    }
+
+    // Checks the calls made since the last check, in order
+    private void expect(String... calls) {
+        assertEquals(calls.length == 0 ? Collections.emptyList() : Arrays.asList(calls), sink.calls);
+        sink.calls.clear();
+    }
+}